@@ -0,0 +1,49 @@
+package cn.popcraft.verify.benchmarks;
+
+import cn.popcraft.verify.managers.VerificationManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证码生成基准测试
+ * 作者: Popcraft
+ *
+ * 测量玩家加入时生成随机验证码的开销(SecureRandom + 拼接字符串)。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodeGenerationBenchmark {
+
+    @Param({"6", "12"})
+    public int length;
+
+    private SecureRandom random;
+    private String characters;
+
+    @Setup
+    public void setup() {
+        random = new SecureRandom();
+        characters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    }
+
+    @Benchmark
+    public String generateRandomCode() {
+        return VerificationManager.generateRandomCode(random, characters, length);
+    }
+}
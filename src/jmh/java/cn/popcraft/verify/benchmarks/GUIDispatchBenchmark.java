@@ -0,0 +1,74 @@
+package cn.popcraft.verify.benchmarks;
+
+import cn.popcraft.verify.gui.GUIAction;
+import cn.popcraft.verify.gui.VerifyInventoryHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 界面点击分发基准测试
+ * 作者: Popcraft
+ *
+ * 比较按格子查表分发和原先比较界面标题、物品名称的分发方式。
+ * 物品的创建依赖服务器的 ItemFactory，无法在服务器外运行，因此这里只测量分发部分。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GUIDispatchBenchmark {
+
+    private static final String VERIFY_TITLE = "§6§l验证码验证";
+
+    private VerifyInventoryHolder holder;
+    private String clickedTitle;
+    private String clickedItemName;
+    private int slot;
+
+    @Setup
+    public void setup() {
+        GUIAction[] actions = new GUIAction[27];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = GUIAction.NONE;
+        }
+        actions[11] = GUIAction.START_VERIFY;
+        actions[15] = GUIAction.COPY_CODE;
+        holder = new VerifyInventoryHolder(VerifyInventoryHolder.Type.VERIFY, actions, "A7K9Q2");
+        // 使用新字符串，避免比较时直接命中同一引用
+        clickedTitle = new String(VERIFY_TITLE);
+        clickedItemName = new String("§a开始验证");
+        slot = 11;
+    }
+
+    @Benchmark
+    public GUIAction dispatchBySlot() {
+        return holder.getAction(slot);
+    }
+
+    @Benchmark
+    public GUIAction dispatchByTitle() {
+        // 原实现: 先在标题中查找关键字确定界面，再在物品名称中查找关键字确定按钮
+        if (clickedTitle.contains("服务器规则")) {
+            return GUIAction.VIEW_PAGE;
+        } else if (clickedTitle.contains("验证码验证")) {
+            if (clickedItemName.contains("开始验证") || clickedItemName.contains("§a开始验证")) {
+                return GUIAction.START_VERIFY;
+            } else if (clickedItemName.contains("复制验证码") || clickedItemName.contains("§7复制验证码")) {
+                return GUIAction.COPY_CODE;
+            }
+        }
+        return GUIAction.NONE;
+    }
+}
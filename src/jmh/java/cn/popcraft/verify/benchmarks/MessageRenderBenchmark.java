@@ -0,0 +1,79 @@
+package cn.popcraft.verify.benchmarks;
+
+import cn.popcraft.verify.utils.MessageTemplate;
+import net.md_5.bungee.api.ChatColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息渲染基准测试
+ * 作者: Popcraft
+ *
+ * 使用默认配置中的加入消息，比较 BookManager 使用的预编译模板和原先逐行 replace 的开销。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageRenderBenchmark {
+
+    private static final List<String> JOIN_MESSAGES = Arrays.asList(
+        "§6===============================",
+        "§a欢迎 §b{player} §a来到服务器！",
+        "§e请输入验证码完成验证: §c{code}",
+        "§7使用命令: §f/verify {code}",
+        "§7您有 §c{attempts} §7次尝试机会，§c{timeout} §7秒内有效",
+        "§6==============================="
+    );
+
+    private List<MessageTemplate> templates;
+    private String code;
+    private String playerName;
+    private int attempts;
+
+    @Setup
+    public void setup() {
+        String[] resolved = new String[JOIN_MESSAGES.size()];
+        for (int i = 0; i < resolved.length; i++) {
+            resolved[i] = JOIN_MESSAGES.get(i).replace("{timeout}", "300");
+        }
+        templates = MessageTemplate.compileAll(Arrays.asList(resolved));
+        code = "A7K9Q2";
+        playerName = "Steve";
+        attempts = 3;
+    }
+
+    @Benchmark
+    public void renderTemplates(Blackhole blackhole) {
+        for (MessageTemplate template : templates) {
+            blackhole.consume(template.render(code, playerName, attempts));
+        }
+    }
+
+    @Benchmark
+    public void renderReplaceChain(Blackhole blackhole) {
+        // 原实现: 每次发送都对原始文本逐个 replace 占位符，再转换颜色代码
+        for (String message : JOIN_MESSAGES) {
+            message = message.replace("{code}", code);
+            message = message.replace("{player}", playerName);
+            message = message.replace("{attempts}", String.valueOf(attempts));
+            message = message.replace("{timeout}", String.valueOf(300));
+            blackhole.consume(ChatColor.translateAlternateColorCodes('&', message));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cn.popcraft.verify.benchmarks;
+
+import cn.popcraft.verify.protection.ReputationTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网段信誉查询基准测试
+ * 作者: Popcraft
+ *
+ * 前缀树中记录了 100000 个随机 IPv4 和 IPv6 地址(各三级网段)，
+ * 分别查询已记录的地址和从未出现过的地址，以及记录一次验证结果的开销。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReputationTrieBenchmark {
+
+    private static final int ADDRESSES = 100_000;
+    private static final int MASK = 1023;
+    private static final double DECAY_RATE = Math.log(2D) / 600_000D;
+
+    private ReputationTrie trie;
+    private InetAddress[] known;
+    private InetAddress[] unknown;
+    private int index;
+
+    @Setup
+    public void setup() throws UnknownHostException {
+        Random random = new Random(42L);
+        trie = new ReputationTrie();
+        long now = System.currentTimeMillis();
+
+        known = new InetAddress[MASK + 1];
+        for (int i = 0; i < ADDRESSES; i++) {
+            InetAddress address = randomAddress(random);
+            trie.record(address, random.nextInt(3), random.nextInt(3), now, DECAY_RATE, Integer.MAX_VALUE);
+            if (i <= MASK) {
+                known[i] = address;
+            }
+        }
+
+        unknown = new InetAddress[MASK + 1];
+        for (int i = 0; i <= MASK; i++) {
+            unknown[i] = randomAddress(random);
+        }
+    }
+
+    private static InetAddress randomAddress(Random random) throws UnknownHostException {
+        byte[] bytes = new byte[random.nextInt(4) == 0 ? 16 : 4];
+        random.nextBytes(bytes);
+        return InetAddress.getByAddress(bytes);
+    }
+
+    @Benchmark
+    public ReputationTrie.Assessment assessKnown() {
+        return trie.assess(known[index++ & MASK], System.currentTimeMillis(), DECAY_RATE);
+    }
+
+    @Benchmark
+    public ReputationTrie.Assessment assessUnknown() {
+        return trie.assess(unknown[index++ & MASK], System.currentTimeMillis(), DECAY_RATE);
+    }
+
+    @Benchmark
+    public void recordKnown() {
+        trie.record(known[index++ & MASK], 0D, 1D, System.currentTimeMillis(), DECAY_RATE, Integer.MAX_VALUE);
+    }
+}
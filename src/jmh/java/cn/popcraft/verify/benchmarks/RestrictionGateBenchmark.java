@@ -0,0 +1,80 @@
+package cn.popcraft.verify.benchmarks;
+
+import cn.popcraft.verify.protection.RestrictionGate;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 未验证玩家判断基准测试
+ * 作者: Popcraft
+ *
+ * 比较按实体 ID 查询开放寻址表和按 UUID 查询 ConcurrentHashMap 的开销，
+ * 以及没有未验证玩家时的判断。表中标记了 200 个玩家，被测玩家已验证。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RestrictionGateBenchmark {
+
+    private static final int RESTRICTED = 200;
+
+    private RestrictionGate gate;
+    private RestrictionGate emptyGate;
+    private Map<UUID, Boolean> pendingMap;
+    private int entityId;
+    private UUID playerId;
+
+    @Setup
+    public void setup() {
+        gate = new RestrictionGate();
+        emptyGate = new RestrictionGate();
+        pendingMap = new ConcurrentHashMap<>();
+        for (int i = 0; i < RESTRICTED; i++) {
+            gate.restrict(player(1000 + i * 7));
+            pendingMap.put(UUID.randomUUID(), Boolean.TRUE);
+        }
+        entityId = 1003;
+        playerId = UUID.randomUUID();
+    }
+
+    /**
+     * 只实现 getEntityId 的玩家代理，用于在服务器外标记玩家
+     */
+    private static Player player(int entityId) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+            (proxy, method, args) -> "getEntityId".equals(method.getName()) ? entityId : null);
+    }
+
+    @Benchmark
+    public boolean gateVerifiedPlayer() {
+        return gate.isRestricted(entityId);
+    }
+
+    @Benchmark
+    public boolean gateNoPendingPlayers() {
+        return emptyGate.isRestricted(entityId);
+    }
+
+    @Benchmark
+    public boolean mapLookup() {
+        return pendingMap.containsKey(playerId);
+    }
+}
@@ -0,0 +1,101 @@
+package cn.popcraft.verify.benchmarks;
+
+import cn.popcraft.verify.managers.SessionTable;
+import cn.popcraft.verify.managers.VerificationManager.PlayerVerification;
+import cn.popcraft.verify.utils.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 超时清理基准测试
+ * 作者: Popcraft
+ *
+ * 模拟稳定状态: 会话的截止时间均匀分布在超时时长内，每次调用推进一秒(一次清理)，
+ * 到期的会话从会话表中移除后立即以新的截止时间重新登记，保持等待人数不变。
+ *
+ * sweepTimingWheel 对应当前的时间轮 + 会话表实现，sweepFullScan 对应原先每秒遍历全部会话的实现。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeoutSweepBenchmark {
+
+    private static final long TICK_MILLIS = 1000L;
+    private static final int TIMEOUT_SECONDS = 300;
+    private static final long TIMEOUT_MILLIS = TIMEOUT_SECONDS * TICK_MILLIS;
+
+    @Param({"1000", "10000", "100000"})
+    public int sessions;
+
+    private TimingWheel<UUID> wheel;
+    private SessionTable table;
+    private Map<UUID, UUID> verifications;
+    private long now;
+    private long[] deadlines;
+    private int expiredCount;
+
+    @Setup
+    public void setup() {
+        wheel = new TimingWheel<>(TICK_MILLIS, 512);
+        table = new SessionTable((codeHigh, codeLow, attachment) -> { });
+        verifications = new ConcurrentHashMap<>();
+        now = System.currentTimeMillis();
+        deadlines = new long[sessions];
+
+        for (int i = 0; i < sessions; i++) {
+            UUID playerId = UUID.randomUUID();
+            long deadline = now + (i % TIMEOUT_SECONDS + 1) * TICK_MILLIS;
+            table.put(playerId, "A7K9Q2", now, deadline, 3);
+            wheel.schedule(playerId, deadline);
+            verifications.put(playerId, playerId);
+            deadlines[i] = deadline;
+        }
+    }
+
+    @Benchmark
+    public int sweepTimingWheel() {
+        now += TICK_MILLIS;
+        expiredCount = 0;
+        wheel.advance(now, playerId -> {
+            PlayerVerification expired = table.removeExpired(playerId, now, null);
+            if (expired != null) {
+                expiredCount++;
+                table.put(playerId, "A7K9Q2", now, now + TIMEOUT_MILLIS, 3);
+                wheel.schedule(playerId, now + TIMEOUT_MILLIS);
+            }
+        });
+        return expiredCount;
+    }
+
+    @Benchmark
+    public void sweepFullScan(Blackhole blackhole) {
+        now += TICK_MILLIS;
+        // 原实现: 每次清理遍历全部会话并逐个比较截止时间
+        int index = 0;
+        for (UUID playerId : verifications.values()) {
+            if (now > deadlines[index]) {
+                deadlines[index] = now + TIMEOUT_MILLIS;
+                blackhole.consume(playerId);
+            }
+            index++;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package cn.popcraft.verify.benchmarks;
+
+import cn.popcraft.verify.managers.SessionTable;
+import cn.popcraft.verify.utils.PackedCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证码校验基准测试
+ * 作者: Popcraft
+ *
+ * 分别测量输入正确和输入错误两种情况下 VerificationManager.verifyCode 的核心部分:
+ * 在输入上就地编码，再在会话表中比较。
+ * 输入正确会让会话进入 SUCCESS 状态，因此每次都重新登记会话(包含登记会话的开销)；
+ * 输入错误时最大尝试次数设为无限，会话始终保持 PENDING 状态。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VerifyCodeBenchmark {
+
+    private static final String CODE = "A7K9Q2";
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private SessionTable sessions;
+    private UUID playerId;
+    private UUID pendingId;
+    private String correctInput;
+    private String wrongInput;
+
+    @Setup
+    public void setup() {
+        sessions = new SessionTable((codeHigh, codeLow, attachment) -> { });
+        playerId = UUID.randomUUID();
+        pendingId = UUID.randomUUID();
+        sessions.put(pendingId, CODE, System.currentTimeMillis(), Long.MAX_VALUE, Integer.MAX_VALUE);
+        // 模拟玩家输入: 小写并带有多余空格
+        correctInput = " a7k9q2 ";
+        wrongInput = " a7k9q3 ";
+    }
+
+    @Benchmark
+    public SessionTable.AttemptResult verifyCorrect() {
+        long now = System.currentTimeMillis();
+        sessions.put(playerId, CODE, now, now + TIMEOUT_MILLIS, 3);
+        return attempt(playerId, correctInput, now);
+    }
+
+    @Benchmark
+    public SessionTable.AttemptResult verifyWrong() {
+        return attempt(pendingId, wrongInput, System.currentTimeMillis());
+    }
+
+    private SessionTable.AttemptResult attempt(UUID id, String input, long now) {
+        int start = PackedCode.trimStart(input);
+        int end = PackedCode.trimEnd(input, start);
+        return sessions.attempt(id, PackedCode.packHigh(input, start, end), PackedCode.packLow(input, start, end),
+            false, now);
+    }
+}
@@ -1,15 +1,30 @@
 package cn.popcraft.verify;
 
+import cn.popcraft.verify.audit.AuditLog;
 import cn.popcraft.verify.commands.VerifyCommand;
 import cn.popcraft.verify.commands.VerifyTabCompleter;
 import cn.popcraft.verify.events.PlayerEventListener;
 import cn.popcraft.verify.events.GUIClickListener;
+import cn.popcraft.verify.events.RestrictionListener;
 import cn.popcraft.verify.managers.ConfigManager;
+import cn.popcraft.verify.managers.ConfigReloader;
+import cn.popcraft.verify.managers.ConfigSection;
 import cn.popcraft.verify.managers.VerificationManager;
 import cn.popcraft.verify.managers.BookManager;
 import cn.popcraft.verify.managers.GUIManager;
+import cn.popcraft.verify.metrics.MetricsExporter;
+import cn.popcraft.verify.metrics.VerifyMetrics;
+import cn.popcraft.verify.network.NetworkSync;
+import cn.popcraft.verify.protection.AdmissionController;
+import cn.popcraft.verify.protection.IpReputation;
+import cn.popcraft.verify.protection.RestrictionGate;
+import cn.popcraft.verify.storage.VerifiedPlayerStore;
+import cn.popcraft.verify.utils.StartupTimer;
+import cn.popcraft.verify.utils.TaskScheduler;
+import cn.popcraft.verify.utils.WorkQueue;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.Set;
 import java.util.logging.Level;
 
 /**
@@ -24,41 +39,99 @@ import java.util.logging.Level;
 public class VerifyPlugin extends JavaPlugin {
     
     private static VerifyPlugin instance;
+    private TaskScheduler taskScheduler;
+    private WorkQueue workQueue;
     private ConfigManager configManager;
+    private ConfigReloader configReloader;
     private VerificationManager verificationManager;
-    private BookManager bookManager;
-    private GUIManager guiManager;
+    private volatile BookManager bookManager;
+    private volatile GUIManager guiManager;
+    private VerifiedPlayerStore verifiedPlayerStore;
+    private NetworkSync networkSync;
+    private AdmissionController admissionController;
+    private IpReputation ipReputation;
+    private RestrictionGate restrictionGate;
+    private AuditLog auditLog;
+    private VerifyMetrics metrics;
+    private MetricsExporter metricsExporter;
+    private StartupTimer startupTimer;
     
     @Override
     public void onEnable() {
         instance = this;
+        StartupTimer timer = new StartupTimer();
         
-        // 初始化配置管理器
+        // 按服务器类型(Bukkit 或 Folia)选择任务调度方式
+        taskScheduler = TaskScheduler.create(this);
+        
+        // 初始化配置管理器(只解析一次配置文件)
         configManager = new ConfigManager(this);
+        timer.phase("config");
         
-        // 初始化验证管理器
-        verificationManager = new VerificationManager(this);
+        // 初始化运行指标(按配置启动导出)
+        metrics = new VerifyMetrics(this);
+        metricsExporter = new MetricsExporter(this);
+        metricsExporter.reload();
+        timer.phase("metrics");
+        
+        // 启动主线程任务队列
+        workQueue = new WorkQueue(this);
+        workQueue.start();
+        
+        // 启动审计日志
+        auditLog = new AuditLog(this, configManager.getSettings().getAuditBufferSize());
+        auditLog.start();
+        timer.phase("audit");
+        
+        // 加载已验证玩家记录(后台线程加载，过滤器先行恢复)
+        verifiedPlayerStore = new VerifiedPlayerStore(this);
+        verifiedPlayerStore.load();
+        timer.phase("store");
+        
+        // 初始化跨服同步(按配置打开通道)
+        networkSync = new NetworkSync(this, verifiedPlayerStore);
+        networkSync.reload();
+        timer.phase("network");
         
-        // 初始化书管理器
-        bookManager = new BookManager(this);
+        // 初始化登录准入控制器
+        admissionController = new AdmissionController(this);
         
-        // 初始化GUI管理器
-        guiManager = new GUIManager(this);
+        // 初始化网段信誉(按配置启动整理任务)
+        ipReputation = new IpReputation(this);
+        ipReputation.update();
+        
+        // 初始化未验证玩家标记
+        restrictionGate = new RestrictionGate();
+        
+        // 初始化验证管理器(按配置启动验证码池和超时检查)
+        verificationManager = new VerificationManager(this);
+        verificationManager.updateServices();
+        timer.phase("verification");
+        
+        // 书管理器和GUI管理器在第一次使用时创建
         
         // 注册事件监听器
         getServer().getPluginManager().registerEvents(new PlayerEventListener(this), this);
         getServer().getPluginManager().registerEvents(new GUIClickListener(this), this);
+        getServer().getPluginManager().registerEvents(new RestrictionListener(this), this);
         
         // 注册命令
         if (getCommand("verify") != null) {
             getCommand("verify").setExecutor(new VerifyCommand(this));
             getCommand("verify").setTabCompleter(new VerifyTabCompleter());
         }
+        timer.phase("listeners");
+        
+        // 监视配置文件，修改后自动重载
+        configReloader = new ConfigReloader(this);
+        configReloader.update();
+        timer.phase("watcher");
         
-        // 加载配置
-        reloadPlugin();
+        timer.finish();
+        startupTimer = timer;
         
         getLogger().info("Verify 插件已成功启用！");
+        getLogger().info(timer.summary());
         getLogger().info("版本: " + getDescription().getVersion());
         getLogger().info("作者: " + getDescription().getAuthors());
     }
@@ -68,27 +141,97 @@ public class VerifyPlugin extends JavaPlugin {
         getLogger().info("Verify 插件已禁用！");
         
         // 清理资源
+        if (configReloader != null) {
+            configReloader.close();
+        }
+        
         if (verificationManager != null) {
             verificationManager.cleanup();
         }
         
+        if (networkSync != null) {
+            networkSync.close();
+        }
+        
+        if (verifiedPlayerStore != null) {
+            verifiedPlayerStore.close();
+        }
+        
+        if (metricsExporter != null) {
+            metricsExporter.close();
+        }
+        
+        if (ipReputation != null) {
+            ipReputation.close();
+        }
+        
+        if (workQueue != null) {
+            workQueue.close();
+        }
+        
+        if (auditLog != null) {
+            auditLog.close();
+        }
+        
         instance = null;
     }
     
     /**
-     * 重载插件配置
+     * 重载插件配置(在当前线程解析)
+     * 命令和文件监视使用 ConfigReloader 在后台线程解析
+     *
+     * @return 发生变化的配置节
      */
-    public void reloadPlugin() {
-        // 重载配置文件
-        saveDefaultConfig();
-        reloadConfig();
+    public Set<ConfigSection> reloadPlugin() {
+        Set<ConfigSection> changed = configManager.reloadConfig();
+        applyConfigChanges(changed);
         
-        // 重新加载配置管理器
-        if (configManager != null) {
-            configManager.reloadConfig();
+        getLogger().log(Level.INFO, "配置文件已重载！");
+        return changed;
+    }
+    
+    /**
+     * 按发生变化的配置节重建缓存和服务(主线程)
+     * 其余组件读取配置快照时按节的版本自行判断
+     */
+    public void applyConfigChanges(Set<ConfigSection> changed) {
+        // 界面模板和规则书缓存(尚未创建时无需处理)
+        if (changed.contains(ConfigSection.BOOK)) {
+            if (guiManager != null) {
+                guiManager.invalidateTemplates();
+            }
+            if (bookManager != null) {
+                bookManager.invalidateCache();
+            }
         }
         
-        getLogger().log(Level.INFO, "配置文件已重载！");
+        // 启动或停止验证码池和超时检查
+        if (changed.contains(ConfigSection.VERIFICATION)) {
+            verificationManager.updateServices();
+        }
+        
+        // 启动或停止网段信誉整理任务
+        if (changed.contains(ConfigSection.REPUTATION)) {
+            ipReputation.update();
+        }
+        
+        // 按新配置重新启动指标导出
+        if (changed.contains(ConfigSection.METRICS)) {
+            metricsExporter.reload();
+        }
+        
+        // 按新配置重新打开跨服同步通道
+        if (changed.contains(ConfigSection.NETWORK)) {
+            networkSync.reload();
+        }
+        
+        // 开启或关闭配置文件监视
+        if (changed.contains(ConfigSection.SETTINGS)) {
+            configReloader.update();
+        }
+        
+        // audit 和 work-queue 的设置每次使用时从快照读取，无需重建；
+        // audit.buffer-size 只在启动时读取，由 ConfigManager 提示需要重启
     }
     
     /**
@@ -98,6 +241,20 @@ public class VerifyPlugin extends JavaPlugin {
         return instance;
     }
     
+    /**
+     * 获取任务调度器
+     */
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+    
+    /**
+     * 获取主线程任务队列
+     */
+    public WorkQueue getWorkQueue() {
+        return workQueue;
+    }
+    
     /**
      * 获取配置管理器
      */
@@ -105,6 +262,13 @@ public class VerifyPlugin extends JavaPlugin {
         return configManager;
     }
     
+    /**
+     * 获取配置热重载
+     */
+    public ConfigReloader getConfigReloader() {
+        return configReloader;
+    }
+    
     /**
      * 获取验证管理器
      */
@@ -113,16 +277,92 @@ public class VerifyPlugin extends JavaPlugin {
     }
     
     /**
-     * 获取书管理器
+     * 获取已验证玩家存储
+     */
+    public VerifiedPlayerStore getVerifiedPlayerStore() {
+        return verifiedPlayerStore;
+    }
+    
+    /**
+     * 获取跨服同步
+     */
+    public NetworkSync getNetworkSync() {
+        return networkSync;
+    }
+    
+    /**
+     * 获取审计日志
+     */
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+    
+    /**
+     * 获取运行指标
+     */
+    public VerifyMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 获取登录准入控制器
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+    
+    /**
+     * 获取网段信誉
+     */
+    public IpReputation getIpReputation() {
+        return ipReputation;
+    }
+    
+    /**
+     * 获取未验证玩家标记
+     */
+    public RestrictionGate getRestrictionGate() {
+        return restrictionGate;
+    }
+    
+    /**
+     * 获取书管理器，第一次使用时创建
      */
     public BookManager getBookManager() {
-        return bookManager;
+        BookManager manager = bookManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = bookManager;
+                if (manager == null) {
+                    manager = new BookManager(this);
+                    bookManager = manager;
+                }
+            }
+        }
+        return manager;
     }
     
     /**
-     * 获取GUI管理器
+     * 获取GUI管理器，第一次使用时创建
      */
     public GUIManager getGUIManager() {
-        return guiManager;
+        GUIManager manager = guiManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = guiManager;
+                if (manager == null) {
+                    manager = new GUIManager(this);
+                    guiManager = manager;
+                }
+            }
+        }
+        return manager;
+    }
+    
+    /**
+     * 获取启动计时结果
+     */
+    public StartupTimer getStartupTimer() {
+        return startupTimer;
     }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package cn.popcraft.verify.audit;
+
+/**
+ * 审计事件类型
+ * 作者: Popcraft
+ *
+ * 每种事件带有控制台输出格式，{player} 为玩家名称，{detail} 为附加信息。
+ */
+public enum AuditEvent {
+    SESSION_CREATED("为玩家 {player} 创建验证，验证码: {detail}"),
+    JOIN_CHALLENGE("玩家 {player} 加入，需要验证 (验证码: {detail})"),
+    JOIN_BYPASS("玩家 {player} 跳过验证 (拥有 bypass 权限)"),
+    JOIN_DISABLED("验证功能未启用，玩家 {player} 直接进入"),
+    JOIN_REMEMBERED("玩家 {player} 已有验证记录，跳过验证"),
+    LOGIN_REJECTED("拒绝玩家 {player} 登录 (服务器繁忙: {detail})"),
+    LOGIN_BLOCKED("拒绝玩家 {player} 登录 (网段信誉过低: {detail})"),
+    VERIFY_SUCCESS("玩家 {player} 验证成功"),
+    VERIFY_FAILED("玩家 {player} 验证失败 (尝试 {detail})"),
+    VERIFY_TIMEOUT("玩家 {player} 验证超时"),
+    QUIT("玩家 {player} 退出，清理验证信息"),
+    VERIFY_GUI_OPENED("为玩家 {player} 打开了验证界面"),
+    VERIFY_GUI_CLOSED("玩家 {player} 关闭了验证界面"),
+    RULE_BOOK_GUI_OPENED("为玩家 {player} 打开了规则书界面"),
+    RULE_BOOK_GUI_CLOSED("玩家 {player} 关闭了规则书界面"),
+    RULE_BOOK_SENT("为玩家 {player} 发送了实体规则书"),
+    REWARD_GIVEN("为玩家 {player} 发放了验证奖励"),
+    CONFIG_RELOADED("玩家 {player} 重载了插件配置");
+
+    private final String consoleFormat;
+
+    AuditEvent(String consoleFormat) {
+        this.consoleFormat = consoleFormat;
+    }
+
+    /**
+     * 生成控制台输出文本
+     */
+    public String format(String playerName, String detail) {
+        String text = consoleFormat.replace("{player}", String.valueOf(playerName));
+        return detail == null ? text : text.replace("{detail}", detail);
+    }
+}
@@ -0,0 +1,239 @@
+package cn.popcraft.verify.audit;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.managers.VerifySettings;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 审计日志
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 接收各线程产生的审计事件(只放入无锁环形缓冲区)
+ * - 后台线程批量写入按日期和大小滚动的 JSONL 文件
+ * - 按速率限制输出到控制台
+ */
+public class AuditLog {
+
+    private static final String DIRECTORY = "audit";
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final VerifyPlugin plugin;
+    private final File directory;
+    private final AuditRingBuffer buffer;
+    private final StringBuilder line = new StringBuilder(256);
+    private Thread writerThread;
+    private volatile boolean running;
+
+    // 以下字段只在写入线程中访问
+    private BufferedWriter writer;
+    private LocalDate currentDate;
+    private int currentIndex;
+    private long currentSize;
+    private long consoleWindowStart;
+    private int consoleWindowCount;
+    private long consoleSuppressed;
+
+    public AuditLog(VerifyPlugin plugin, int bufferSize) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), DIRECTORY);
+        this.buffer = new AuditRingBuffer(bufferSize);
+    }
+
+    /**
+     * 启动后台写入线程
+     */
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::writeLoop, "Verify-Audit-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 记录与玩家相关的事件
+     */
+    public void record(AuditEvent event, Player player, String detail) {
+        record(event, player.getUniqueId(), player.getName(), detail);
+    }
+
+    /**
+     * 记录事件，可在任意线程调用，不会阻塞
+     */
+    public void record(AuditEvent event, UUID playerId, String playerName, String detail) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (!running || (!settings.isAuditFileEnabled() && !settings.logVerifications())) {
+            return;
+        }
+        buffer.offer(new AuditRecord(System.currentTimeMillis(), event, playerId, playerName, detail));
+    }
+
+    /**
+     * 获取因缓冲区已满而丢弃的记录数
+     */
+    public long getDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
+    /**
+     * 后台写入循环: 每批最多取出 BATCH_SIZE 条记录，整批写入后统一刷新
+     */
+    private void writeLoop() {
+        while (running || !buffer.isEmpty()) {
+            VerifySettings settings = plugin.getConfigManager().getSettings();
+            int written = 0;
+            AuditRecord record;
+
+            while (written < BATCH_SIZE && (record = buffer.poll()) != null) {
+                if (settings.isAuditFileEnabled()) {
+                    writeRecord(record, settings);
+                }
+                if (settings.logVerifications()) {
+                    writeConsole(record, settings);
+                }
+                written++;
+            }
+
+            if (written > 0) {
+                flush();
+            } else {
+                flushSuppressedNotice();
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+
+        flushSuppressedNotice();
+        closeWriter();
+    }
+
+    private void writeRecord(AuditRecord record, VerifySettings settings) {
+        try {
+            rotateIfNeeded(record.getTimestamp(), settings);
+
+            line.setLength(0);
+            record.appendJson(line);
+            line.append('\n');
+            writer.append(line);
+            currentSize += line.length();
+        } catch (IOException e) {
+            plugin.getLogger().warning("写入审计日志失败: " + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    /**
+     * 日期变化或文件超过大小上限时切换到新文件
+     */
+    private void rotateIfNeeded(long timestamp, VerifySettings settings) throws IOException {
+        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+        boolean dateChanged = !date.equals(currentDate);
+
+        if (writer != null && !dateChanged && currentSize < settings.getAuditMaxFileSize()) {
+            return;
+        }
+
+        closeWriter();
+        if (dateChanged) {
+            currentDate = date;
+            currentIndex = 0;
+        }
+
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        // 找到当天第一个未写满的文件
+        File file;
+        while (true) {
+            file = new File(directory, "audit-" + currentDate + (currentIndex == 0 ? "" : "." + currentIndex) + ".jsonl");
+            if (!file.exists() || file.length() < settings.getAuditMaxFileSize()) {
+                break;
+            }
+            currentIndex++;
+        }
+
+        writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        currentSize = file.length();
+    }
+
+    /**
+     * 控制台输出，超过每秒上限的记录只计数
+     */
+    private void writeConsole(AuditRecord record, VerifySettings settings) {
+        long now = System.currentTimeMillis();
+        if (now - consoleWindowStart >= 1000L) {
+            flushSuppressedNotice();
+            consoleWindowStart = now;
+            consoleWindowCount = 0;
+        }
+
+        if (consoleWindowCount < settings.getAuditConsoleRate()) {
+            consoleWindowCount++;
+            plugin.getLogger().info(record.getEvent().format(record.getPlayerName(), record.getDetail()));
+        } else {
+            consoleSuppressed++;
+        }
+    }
+
+    private void flushSuppressedNotice() {
+        if (consoleSuppressed > 0) {
+            plugin.getLogger().info("控制台输出过多，已省略 " + consoleSuppressed + " 条验证日志");
+            consoleSuppressed = 0;
+        }
+    }
+
+    private void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            plugin.getLogger().warning("写入审计日志失败: " + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // 关闭失败时无需处理
+        }
+        writer = null;
+    }
+
+    /**
+     * 停止写入线程并写入剩余记录
+     */
+    public void close() {
+        running = false;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(5000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cn.popcraft.verify.audit;
+
+import java.util.UUID;
+
+/**
+ * 审计记录
+ * 作者: Popcraft
+ *
+ * 由产生事件的线程创建后放入环形缓冲区，只包含少量不可变字段，
+ * 格式化和写入都在后台线程完成。
+ */
+public final class AuditRecord {
+
+    private final long timestamp;
+    private final AuditEvent event;
+    private final UUID playerId;
+    private final String playerName;
+    private final String detail;
+
+    public AuditRecord(long timestamp, AuditEvent event, UUID playerId, String playerName, String detail) {
+        this.timestamp = timestamp;
+        this.event = event;
+        this.playerId = playerId;
+        this.playerName = playerName;
+        this.detail = detail;
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public AuditEvent getEvent() { return event; }
+    public UUID getPlayerId() { return playerId; }
+    public String getPlayerName() { return playerName; }
+    public String getDetail() { return detail; }
+
+    /**
+     * 以 JSON 格式追加到 StringBuilder(不含换行)
+     */
+    void appendJson(StringBuilder builder) {
+        builder.append("{\"ts\":").append(timestamp)
+            .append(",\"event\":\"").append(event.name()).append('"');
+        if (playerId != null) {
+            builder.append(",\"uuid\":\"").append(playerId).append('"');
+        }
+        if (playerName != null) {
+            builder.append(",\"player\":");
+            appendString(builder, playerName);
+        }
+        if (detail != null) {
+            builder.append(",\"detail\":");
+            appendString(builder, detail);
+        }
+        builder.append('}');
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,67 @@
+package cn.popcraft.verify.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁环形缓冲区(多生产者、单消费者)
+ * 作者: Popcraft
+ *
+ * 生产者通过 CAS 占用写入位置，缓冲区满时直接丢弃记录并计数，
+ * 永远不会阻塞产生事件的线程。只允许一个线程调用 poll。
+ */
+final class AuditRingBuffer {
+
+    private final AtomicReferenceArray<AuditRecord> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+    private final LongAdder dropped = new LongAdder();
+
+    AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 放入一条记录，缓冲区已满时返回 false
+     */
+    boolean offer(AuditRecord record) {
+        long position;
+        do {
+            position = head.get();
+            if (position - tail > mask) {
+                dropped.increment();
+                return false;
+            }
+        } while (!head.compareAndSet(position, position + 1));
+
+        slots.lazySet((int) (position & mask), record);
+        return true;
+    }
+
+    /**
+     * 取出一条记录，没有已发布的记录时返回 null(仅限消费者线程)
+     */
+    AuditRecord poll() {
+        long position = tail;
+        int index = (int) (position & mask);
+        AuditRecord record = slots.get(index);
+        if (record == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        tail = position + 1;
+        return record;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail;
+    }
+
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+}
@@ -1,15 +1,23 @@
 package cn.popcraft.verify.commands;
 
 import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.audit.AuditEvent;
 import cn.popcraft.verify.managers.VerificationManager;
 import cn.popcraft.verify.managers.BookManager;
-import org.bukkit.Bukkit;
+import cn.popcraft.verify.managers.CodePool;
+import cn.popcraft.verify.managers.ConfigReloader;
+import cn.popcraft.verify.metrics.Histogram;
+import cn.popcraft.verify.metrics.VerifyMetrics;
+import cn.popcraft.verify.protection.AdmissionController;
+import cn.popcraft.verify.protection.IpReputation;
+import cn.popcraft.verify.utils.WorkQueue;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * 验证命令处理器
@@ -58,6 +66,14 @@ public class VerifyCommand implements CommandExecutor {
                 handleBook(player);
                 break;
                 
+            case "metrics":
+                handleMetrics(player);
+                break;
+                
+            case "revoke":
+                handleRevoke(player, args);
+                break;
+                
             default:
                 // 尝试作为验证码处理
                 handleVerification(player, args[0]);
@@ -105,8 +121,8 @@ public class VerifyCommand implements CommandExecutor {
             // 验证成功
             handleVerificationSuccess(player, verification);
         } else {
-            // 验证失败
-            handleVerificationFailed(player, verification);
+            // 验证失败，重新读取尝试次数(验证信息为只读快照)
+            handleVerificationFailed(player, verification, plugin.getVerificationManager().getVerification(player));
         }
     }
     
@@ -114,32 +130,17 @@ public class VerifyCommand implements CommandExecutor {
      * 处理验证成功
      */
     private void handleVerificationSuccess(Player player, VerificationManager.PlayerVerification verification) {
-        // 发送成功消息
-        plugin.getBookManager().sendVerificationSuccessMessage(player);
-        
-        // 清理验证记录
-        plugin.getVerificationManager().removeVerification(player);
-        
-        // 显示规则书（如果启用）
-        if (plugin.getConfigManager().isBookEnabled()) {
-            plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
-                plugin.getBookManager().showRuleBook(player);
-            }, 20L);
-        }
-        
-        // 给予奖励（如果配置）
-        if (plugin.getConfigManager().giveRewards()) {
-            giveRewards(player);
-        }
-        
-        player.sendMessage("§a✅ 验证成功！欢迎来到服务器！");
+        // 与聊天框验证共用成功后的处理
+        plugin.getVerificationManager().completeVerification(player);
     }
     
     /**
      * 处理验证失败
      */
-    private void handleVerificationFailed(Player player, VerificationManager.PlayerVerification verification) {
-        int remainingAttempts = verification.getMaxAttempts() - verification.getAttempts();
+    private void handleVerificationFailed(Player player, VerificationManager.PlayerVerification verification,
+                                          VerificationManager.PlayerVerification current) {
+        // 次数用完的玩家已被踢出，验证信息随之移除
+        int remainingAttempts = current == null ? 0 : current.getMaxAttempts() - current.getAttempts();
         
         if (remainingAttempts <= 0) {
             // 没有剩余次数，玩家将被踢出
@@ -161,17 +162,19 @@ public class VerifyCommand implements CommandExecutor {
             return;
         }
         
-        try {
-            plugin.reloadPlugin();
-            player.sendMessage("§a✅ 配置文件已重载！");
-            
-            if (plugin.getConfigManager().logVerifications()) {
-                plugin.getLogger().info("玩家 " + player.getName() + " 重载了插件配置");
+        // 在后台线程解析，只替换发生变化的配置节
+        plugin.getConfigReloader().reload(changed -> {
+            if (changed.isEmpty()) {
+                player.sendMessage("§a✅ 配置文件已重载，没有发生变化");
+            } else {
+                player.sendMessage("§a✅ 配置文件已重载！§7变化: §e" + ConfigReloader.describe(changed));
             }
-        } catch (Exception e) {
-            player.sendMessage("§c❌ 重载失败: " + e.getMessage());
-            plugin.getLogger().severe("重载配置时发生错误: " + e.getMessage());
-        }
+            Set<String> pendingRestart = plugin.getConfigManager().getPendingRestart();
+            if (!pendingRestart.isEmpty()) {
+                player.sendMessage("§e⚠ 以下设置需要重启服务器后生效: §7" + String.join(", ", pendingRestart));
+            }
+            plugin.getAuditLog().record(AuditEvent.CONFIG_RELOADED, player, null);
+        }, e -> player.sendMessage("§c❌ 重载失败: " + e.getMessage()));
     }
     
     /**
@@ -189,10 +192,104 @@ public class VerifyCommand implements CommandExecutor {
         player.sendMessage("§6=== 验证状态 ===");
         player.sendMessage("§7待验证玩家: §e" + pendingCount);
         player.sendMessage("§7已验证玩家: §a" + verifiedCount);
+        
+        AdmissionController admission = plugin.getAdmissionController();
+        player.sendMessage("§7已拒绝连接: §c" + admission.getShedCount()
+            + " §8(全局 " + admission.getShedGlobalCount()
+            + " / 网段 " + admission.getShedSubnetCount()
+            + " / 人数上限 " + admission.getShedPendingCount() + ")");
+        IpReputation reputation = plugin.getIpReputation();
+        player.sendMessage("§7网段信誉: §c拒绝 " + reputation.getBlockedCount()
+            + " §a短验证码 " + reputation.getTrustedCount()
+            + " §8(跟踪 " + reputation.getTrackedPrefixes() + " 个网段节点)");
         player.sendMessage("§7验证功能: " + (plugin.getConfigManager().isVerificationEnabled() ? "§a启用" : "§c禁用"));
         player.sendMessage("§7规则书功能: " + (plugin.getConfigManager().isBookEnabled() ? "§a启用" : "§c禁用"));
     }
     
+    /**
+     * 处理指标命令
+     */
+    private void handleMetrics(Player player) {
+        if (!player.hasPermission("verify.admin")) {
+            player.sendMessage("§c您没有权限使用此命令！");
+            return;
+        }
+        
+        VerifyMetrics metrics = plugin.getMetrics();
+        
+        player.sendMessage("§6=== 验证指标 ===");
+        player.sendMessage("§7加入: §e" + metrics.getJoins()
+            + " §7创建验证: §e" + metrics.getSessionsCreated()
+            + " §7等待中: §e" + plugin.getVerificationManager().getPendingSessionCount());
+        player.sendMessage("§7成功: §a" + metrics.getSuccesses()
+            + " §7失败: §c" + metrics.getFailures()
+            + " §7超时: §c" + metrics.getTimeouts()
+            + " §7踢出: §c" + metrics.getKicks());
+        CodePool codePool = plugin.getVerificationManager().getCodePool();
+        player.sendMessage("§7验证码池: §e" + codePool.getAvailable() + "/" + codePool.getCapacity()
+            + " §7直接生成: §e" + codePool.getMissCount());
+        player.sendMessage("§7验证耗时: " + formatSeconds(metrics.getTimeToVerify()));
+        player.sendMessage("§7成功尝试次数: §e" + String.format("平均 %.2f, p95 ≤ %.0f",
+            metrics.getAttemptsPerSuccess().getMean(), metrics.getAttemptsPerSuccess().getQuantile(0.95)));
+        player.sendMessage("§7超时清理: " + formatMicros(metrics.getSweepDuration()));
+        player.sendMessage("§7加入处理: " + formatMicros(metrics.getJoinDuration()));
+        player.sendMessage("§7登录处理(异步): " + formatMicros(metrics.getPreLoginDuration()));
+        WorkQueue workQueue = plugin.getWorkQueue();
+        player.sendMessage("§7任务队列: §e等待 " + workQueue.getTotalDepth()
+            + " §8(踢出 " + workQueue.getDepth(WorkQueue.Priority.HIGH)
+            + " / 普通 " + workQueue.getDepth(WorkQueue.Priority.NORMAL)
+            + " / 界面 " + workQueue.getDepth(WorkQueue.Priority.LOW) + ")"
+            + " §7已执行: §e" + metrics.getWorkExecuted()
+            + " §7预算用完: §e" + metrics.getWorkBudgetExhausted());
+        player.sendMessage("§7任务队列每 tick: " + formatMicros(metrics.getWorkTickDuration()));
+        player.sendMessage("§7" + plugin.getStartupTimer().summary());
+        player.sendMessage("§7完整指标: §fplugins/Verify/metrics.prom");
+    }
+    
+    private String formatSeconds(Histogram histogram) {
+        return String.format("§e平均 %.1fs, p50 ≤ %.0fs, p95 ≤ %.0fs §8(%d)",
+            histogram.getMean(), histogram.getQuantile(0.5), histogram.getQuantile(0.95), histogram.getCount());
+    }
+    
+    private String formatMicros(Histogram histogram) {
+        return String.format("§e平均 %.1fμs, p99 ≤ %.0fμs §8(%d)",
+            histogram.getMean() * 1_000_000D, histogram.getQuantile(0.99) * 1_000_000D, histogram.getCount());
+    }
+    
+    /**
+     * 处理撤销命令，撤销会同步到网络中的其他服务器
+     */
+    private void handleRevoke(Player player, String[] args) {
+        if (!player.hasPermission("verify.admin")) {
+            player.sendMessage("§c您没有权限使用此命令！");
+            return;
+        }
+        
+        if (args.length < 2) {
+            player.sendMessage("§c用法: /verify revoke <在线玩家|UUID>");
+            return;
+        }
+        
+        // 离线玩家按名称查询可能阻塞主线程，只接受在线玩家名称或 UUID
+        UUID playerId;
+        Player target = plugin.getServer().getPlayerExact(args[1]);
+        if (target != null) {
+            playerId = target.getUniqueId();
+        } else {
+            try {
+                playerId = UUID.fromString(args[1]);
+            } catch (IllegalArgumentException e) {
+                player.sendMessage("§c找不到在线玩家 " + args[1] + "，离线玩家请使用 UUID");
+                return;
+            }
+        }
+        
+        boolean existed = plugin.getVerificationManager().revokeVerification(playerId);
+        player.sendMessage(existed
+            ? "§a✅ 已撤销 " + args[1] + " 的验证记录，下次加入时需要重新验证"
+            : "§e本服没有 " + args[1] + " 的验证记录，已通知其他服务器撤销");
+    }
+    
     /**
      * 处理规则书命令
      */
@@ -215,26 +312,8 @@ public class VerifyCommand implements CommandExecutor {
         player.sendMessage("§7/verify status §e- 查看验证状态 (管理员)");
         player.sendMessage("§7/verify reload §e- 重载配置 (管理员)");
         player.sendMessage("§7/verify book §e- 查看规则书 (管理员)");
+        player.sendMessage("§7/verify metrics §e- 查看运行指标 (管理员)");
+        player.sendMessage("§7/verify revoke <玩家|UUID> §e- 撤销验证记录 (管理员)");
         player.sendMessage("§7/verify help §e- 显示此帮助");
     }
-    
-    /**
-     * 给予奖励
-     */
-    private void giveRewards(Player player) {
-        List<String> rewardCommands = plugin.getConfigManager().getRewardCommands();
-        
-        for (String command : rewardCommands) {
-            String processedCommand = command.replace("{player}", player.getName());
-            try {
-                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), processedCommand);
-            } catch (Exception e) {
-                plugin.getLogger().warning("执行奖励命令失败: " + processedCommand + " - " + e.getMessage());
-            }
-        }
-        
-        if (plugin.getConfigManager().logVerifications()) {
-            plugin.getLogger().info("为玩家 " + player.getName() + " 发放了验证奖励");
-        }
-    }
 }
\ No newline at end of file
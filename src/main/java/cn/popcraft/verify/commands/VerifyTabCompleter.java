@@ -33,6 +33,8 @@ public class VerifyTabCompleter implements TabCompleter {
                 completions.add("status");
                 completions.add("reload");
                 completions.add("book");
+                completions.add("metrics");
+                completions.add("revoke");
             }
             
             // 通用命令
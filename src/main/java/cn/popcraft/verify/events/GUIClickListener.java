@@ -1,20 +1,23 @@
 package cn.popcraft.verify.events;
 
 import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.audit.AuditEvent;
+import cn.popcraft.verify.gui.VerifyInventoryHolder;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
-import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.ItemStack;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.InventoryView;
 
 /**
  * GUI事件监听器
  * 作者: Popcraft
  * 
  * 负责:
- * - 处理GUI点击事件
+ * - 处理GUI点击事件(按界面持有者和格子动作表分发)
  * - 处理界面关闭事件
  */
 public class GUIClickListener implements Listener {
@@ -30,82 +33,57 @@ public class GUIClickListener implements Listener {
      */
     @EventHandler
     public void onInventoryClick(InventoryClickEvent event) {
-        if (event.getWhoClicked() instanceof Player) {
-            Player player = (Player) event.getWhoClicked();
-            Inventory clickedInventory = event.getClickedInventory();
-            
-            if (clickedInventory == null) {
-                return;
-            }
-            
-            // 检查界面是否有标题（Bukkit API兼容）
-            String title = event.getView().getTitle();
-            
-            // 处理规则书界面点击
-            if (title.contains("服务器规则")) {
-                handleRuleBookClick(player, event);
-            }
-            
-            // 处理验证界面点击
-            else if (title.contains("验证码验证")) {
-                handleVerifyClick(player, event);
-            }
+        // 非插件界面直接返回
+        InventoryHolder holder = event.getView().getTopInventory().getHolder();
+        if (!(holder instanceof VerifyInventoryHolder)) {
+            return;
         }
-    }
-    
-    /**
-     * 处理规则书界面点击
-     */
-    private void handleRuleBookClick(Player player, InventoryClickEvent event) {
+        
         event.setCancelled(true); // 取消默认行为
         
-        if (event.getCurrentItem() == null) {
+        if (!(event.getWhoClicked() instanceof Player)) {
             return;
         }
         
-        ItemStack clickedItem = event.getCurrentItem();
-        String itemName = clickedItem.getItemMeta().getDisplayName();
+        Player player = (Player) event.getWhoClicked();
+        VerifyInventoryHolder gui = (VerifyInventoryHolder) holder;
+        int rawSlot = event.getRawSlot();
         
-        // 处理关闭按钮
-        if (itemName.contains("关闭") || itemName.contains("§c关闭")) {
-            player.closeInventory();
-        }
-        
-        // 处理书页点击
-        else if (itemName.contains("第") && itemName.contains("页")) {
-            // 可以在这里添加显示具体书页内容的逻辑
-            player.sendMessage("§7点击了书页: " + itemName);
+        switch (gui.getAction(rawSlot)) {
+            case CLOSE:
+                player.closeInventory();
+                break;
+                
+            case VIEW_PAGE:
+                // 可以在这里添加显示具体书页内容的逻辑
+                player.sendMessage("§7点击了书页: §6第 " + (rawSlot + 1) + " 页");
+                break;
+                
+            case START_VERIFY:
+                player.sendMessage("§7请在聊天框输入验证码进行验证");
+                player.sendMessage("§7例如: /verify ABC123");
+                break;
+                
+            case COPY_CODE:
+                plugin.getBookManager().sendVerificationLink(player, gui.getVerificationCode());
+                break;
+                
+            default:
+                // 处理关闭（点击界面外的区域）
+                if (rawSlot == InventoryView.OUTSIDE && gui.getType() == VerifyInventoryHolder.Type.VERIFY) {
+                    player.closeInventory();
+                }
+                break;
         }
     }
     
     /**
-     * 处理验证界面点击
+     * 禁止在插件界面中拖动物品
      */
-    private void handleVerifyClick(Player player, InventoryClickEvent event) {
-        event.setCancelled(true); // 取消默认行为
-        
-        if (event.getCurrentItem() == null) {
-            return;
-        }
-        
-        ItemStack clickedItem = event.getCurrentItem();
-        String itemName = clickedItem.getItemMeta().getDisplayName();
-        
-        // 处理验证按钮
-        if (itemName.contains("开始验证") || itemName.contains("§a开始验证")) {
-            player.sendMessage("§7请在聊天框输入验证码进行验证");
-            player.sendMessage("§7例如: /verify ABC123");
-        }
-        
-        // 处理复制按钮
-        else if (itemName.contains("复制验证码") || itemName.contains("§7复制验证码")) {
-            // 获取验证码（这里简化处理，实际中需要存储）
-            player.sendMessage("§7请从界面中查看您的验证码");
-        }
-        
-        // 处理关闭（点击界面外的区域）
-        else if (event.getRawSlot() == -999) {
-            player.closeInventory();
+    @EventHandler
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (event.getView().getTopInventory().getHolder() instanceof VerifyInventoryHolder) {
+            event.setCancelled(true);
         }
     }
     
@@ -114,20 +92,18 @@ public class GUIClickListener implements Listener {
      */
     @EventHandler
     public void onInventoryClose(InventoryCloseEvent event) {
-        if (event.getPlayer() instanceof Player) {
-            Player player = (Player) event.getPlayer();
-            String title = event.getView().getTitle();
-            
-            // 记录关闭事件
-            if (title.contains("服务器规则")) {
-                if (plugin.getConfigManager().logVerifications()) {
-                    plugin.getLogger().info("玩家 " + player.getName() + " 关闭了规则书界面");
-                }
-            } else if (title.contains("验证码验证")) {
-                if (plugin.getConfigManager().logVerifications()) {
-                    plugin.getLogger().info("玩家 " + player.getName() + " 关闭了验证界面");
-                }
-            }
+        InventoryHolder holder = event.getView().getTopInventory().getHolder();
+        if (!(holder instanceof VerifyInventoryHolder) || !(event.getPlayer() instanceof Player)) {
+            return;
+        }
+        
+        Player player = (Player) event.getPlayer();
+        
+        // 记录关闭事件
+        if (((VerifyInventoryHolder) holder).getType() == VerifyInventoryHolder.Type.RULE_BOOK) {
+            plugin.getAuditLog().record(AuditEvent.RULE_BOOK_GUI_CLOSED, player, null);
+        } else {
+            plugin.getAuditLog().record(AuditEvent.VERIFY_GUI_CLOSED, player, null);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,17 @@
 package cn.popcraft.verify.events;
 
 import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.audit.AuditEvent;
 import cn.popcraft.verify.managers.VerificationManager;
 import cn.popcraft.verify.managers.BookManager;
+import cn.popcraft.verify.utils.WorkQueue;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
@@ -14,6 +19,7 @@ import org.bukkit.event.player.PlayerQuitEvent;
  * 作者: Popcraft
  * 
  * 负责:
+ * - 在异步登录阶段预先判定验证状态
  * - 处理玩家加入事件
  * - 处理玩家退出事件
  */
@@ -25,24 +31,99 @@ public class PlayerEventListener implements Listener {
         this.plugin = plugin;
     }
     
+    /**
+     * 异步登录阶段，在主线程之外判定验证状态并预先生成验证信息
+     */
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        
+        long start = System.nanoTime();
+        try {
+            handlePreLogin(event);
+        } finally {
+            plugin.getMetrics().recordPreLoginHandler(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * 判定验证状态，服务器繁忙时拒绝登录
+     */
+    private void handlePreLogin(AsyncPlayerPreLoginEvent event) {
+        VerificationManager.LoginDecision decision =
+            plugin.getVerificationManager().prepareLogin(event.getUniqueId(), event.getAddress());
+        
+        // 服务器繁忙，在登录阶段直接拒绝
+        if (decision == VerificationManager.LoginDecision.REJECT) {
+            plugin.getAuditLog().record(AuditEvent.LOGIN_REJECTED, event.getUniqueId(), event.getName(), null);
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                plugin.getConfigManager().getSettings().getAdmissionBusyMessage());
+        } else if (decision == VerificationManager.LoginDecision.BLOCKED) {
+            // 网段信誉过低
+            plugin.getAuditLog().record(AuditEvent.LOGIN_BLOCKED, event.getUniqueId(), event.getName(),
+                plugin.getIpReputation().describeWorstPrefix(event.getAddress()));
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                plugin.getConfigManager().getSettings().getReputationBlockMessage());
+        }
+    }
+    
+    /**
+     * 登录被其他插件拒绝时丢弃预先生成的验证信息
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLoginResult(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            plugin.getVerificationManager().discardPreparedLogin(event.getUniqueId());
+        }
+    }
+    
+    /**
+     * 登录被拒绝(封禁、白名单、满员等)时丢弃预先生成的验证信息
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            plugin.getVerificationManager().discardPreparedLogin(event.getPlayer().getUniqueId());
+        }
+    }
+    
     /**
      * 处理玩家加入事件
      */
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
+        long start = System.nanoTime();
+        try {
+            handleJoin(event);
+        } finally {
+            plugin.getMetrics().recordJoinHandler(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * 根据登录阶段的判定结果处理加入的玩家
+     */
+    private void handleJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        plugin.getMetrics().recordJoin();
+        
+        // 发送没有在线玩家时暂存的跨服同步消息
+        plugin.getNetworkSync().onPlayerJoin(player);
         
         // 移除跳过验证权限的逻辑，确保每次都强制验证
         // 注释掉以下代码：
         
         if (player.hasPermission("verify.bypass")) {
-            if (plugin.getConfigManager().logVerifications()) {
-                plugin.getLogger().info("玩家 " + player.getName() + " 跳过验证 (拥有 bypass 权限)");
-            }
+            plugin.getVerificationManager().discardPreparedLogin(player.getUniqueId());
+            plugin.getVerificationManager().markBypass(player.getUniqueId());
+            
+            plugin.getAuditLog().record(AuditEvent.JOIN_BYPASS, player, null);
             
             // 显示规则书（如果启用）
             if (plugin.getConfigManager().isBookEnabled()) {
-                plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+                plugin.getWorkQueue().submitLater(WorkQueue.Priority.LOW, player, () -> {
                     plugin.getBookManager().showRuleBook(player);
                 }, 20L); // 延迟1秒
             }
@@ -50,17 +131,34 @@ public class PlayerEventListener implements Listener {
             return;
         }
         
-        
-        // 检查验证功能是否启用
-        if (!plugin.getConfigManager().isVerificationEnabled()) {
-            if (plugin.getConfigManager().logVerifications()) {
-                plugin.getLogger().info("验证功能未启用，玩家 " + player.getName() + " 直接进入");
-            }
-            return;
+        // 取出登录阶段的判定结果
+        VerificationManager.LoginDecision decision = plugin.getVerificationManager().attachPreparedLogin(player);
+        switch (decision) {
+            case SKIP:
+                // 验证功能未启用
+                plugin.getAuditLog().record(AuditEvent.JOIN_DISABLED, player, null);
+                return;
+            case VERIFIED:
+                // 已验证过的玩家直接进入
+                plugin.getAuditLog().record(AuditEvent.JOIN_REMEMBERED, player, null);
+                return;
+            case REJECT:
+                // 服务器繁忙，与登录阶段一样拒绝
+                plugin.getAuditLog().record(AuditEvent.LOGIN_REJECTED, player, null);
+                kick(player, plugin.getConfigManager().getSettings().getAdmissionBusyMessage());
+                return;
+            case BLOCKED:
+                // 网段信誉过低
+                plugin.getAuditLog().record(AuditEvent.LOGIN_BLOCKED, player, player.getAddress() == null ? null
+                    : plugin.getIpReputation().describeWorstPrefix(player.getAddress().getAddress()));
+                kick(player, plugin.getConfigManager().getSettings().getReputationBlockMessage());
+                return;
+            case CHALLENGE:
+            default:
+                break;
         }
         
-        // 创建验证
-        VerificationManager.PlayerVerification verification = plugin.getVerificationManager().createVerification(player);
+        VerificationManager.PlayerVerification verification = plugin.getVerificationManager().getVerification(player);
         
         if (verification != null) {
             // 修改加入消息
@@ -68,18 +166,28 @@ public class PlayerEventListener implements Listener {
             event.setJoinMessage(joinMessage);
             
             // 延迟打开验证GUI界面
-            plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+            plugin.getWorkQueue().submitLater(WorkQueue.Priority.LOW, player, () -> {
                 plugin.getGUIManager().openVerifyGUI(player, verification.getVerificationCode());
             }, 20L); // 延迟1秒
             
-            if (plugin.getConfigManager().logVerifications()) {
-                plugin.getLogger().info("玩家 " + player.getName() + " 加入，需要验证 (验证码: " + verification.getVerificationCode() + ")");
-            }
+            plugin.getAuditLog().record(AuditEvent.JOIN_CHALLENGE, player, verification.getVerificationCode());
         } else {
-            plugin.getLogger().severe("无法为玩家 " + player.getName() + " 创建验证！");
+            // 没有验证就无法限制玩家，不能让其留在服务器
+            plugin.getLogger().severe("无法为玩家 " + player.getName() + " 创建验证，已将其踢出！");
+            kick(player, plugin.getConfigManager().getSettings().getKickMessage());
         }
     }
     
+    /**
+     * 踢出已进入服务器但不允许留下的玩家(优先于其他排队任务)
+     */
+    private void kick(Player player, String message) {
+        plugin.getWorkQueue().submit(WorkQueue.Priority.HIGH, player, () -> {
+            plugin.getMetrics().recordKick();
+            player.kickPlayer(message);
+        });
+    }
+    
     /**
      * 处理玩家退出事件
      */
@@ -90,9 +198,7 @@ public class PlayerEventListener implements Listener {
         // 清理玩家的验证信息
         plugin.getVerificationManager().removeVerification(player);
         
-        if (plugin.getConfigManager().logVerifications()) {
-            plugin.getLogger().info("玩家 " + player.getName() + " 退出，清理验证信息");
-        }
+        plugin.getAuditLog().record(AuditEvent.QUIT, player, null);
         
         // 可以在这里添加其他清理逻辑
         cleanupPlayerData(player);
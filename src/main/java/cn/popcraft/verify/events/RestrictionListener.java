@@ -0,0 +1,176 @@
+package cn.popcraft.verify.events;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.managers.VerifySettings;
+import cn.popcraft.verify.protection.RestrictionGate;
+import org.bukkit.Location;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.event.player.PlayerInteractEntityEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+
+import java.util.Locale;
+
+/**
+ * 未验证玩家限制监听器
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 禁止未验证玩家移动(可以转动视角)、聊天和使用命令(验证命令除外)
+ * - 把未验证玩家的聊天内容作为验证码交给 VerificationManager 校验
+ * - 禁止未验证玩家交互、操作物品栏和丢弃物品
+ *
+ * 每个事件先查询 RestrictionGate，已验证的玩家通常只需一次数组读取，
+ * 只有被标记的玩家才会继续读取配置。
+ */
+public class RestrictionListener implements Listener {
+
+    private final VerifyPlugin plugin;
+    private final RestrictionGate gate;
+
+    public RestrictionListener(VerifyPlugin plugin) {
+        this.plugin = plugin;
+        this.gate = plugin.getRestrictionGate();
+    }
+
+    /**
+     * 被标记的玩家在限制启用时才会被拦截
+     */
+    private boolean isBlocked(Player player) {
+        return gate.isRestricted(player) && plugin.getConfigManager().getSettings().isRestrictionEnabled();
+    }
+
+    /**
+     * 禁止移动到其他方块，只转动视角时不拦截
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        if (!isBlocked(event.getPlayer())) {
+            return;
+        }
+
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to != null && from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY()
+                && from.getBlockZ() == to.getBlockZ()) {
+            return;
+        }
+        event.setCancelled(true);
+    }
+
+    /**
+     * 未验证玩家的聊天内容不会广播: 启用聊天框验证时作为验证码校验，否则按限制拦截(异步线程)
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onPlayerChat(AsyncPlayerChatEvent event) {
+        Player player = event.getPlayer();
+        if (!gate.isRestricted(player)) {
+            return;
+        }
+
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (settings.isChatInputEnabled()) {
+            event.setCancelled(true);
+            plugin.getVerificationManager().verifyFromChat(player, event.getMessage());
+        } else if (settings.isRestrictionEnabled()) {
+            event.setCancelled(true);
+            player.sendMessage(settings.getRestrictionMessage());
+        }
+    }
+
+    /**
+     * 只允许使用验证命令和配置中允许的命令
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+        Player player = event.getPlayer();
+        if (!isBlocked(player)) {
+            return;
+        }
+
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (settings.getRestrictionAllowedCommands().contains(commandLabel(event.getMessage()))) {
+            return;
+        }
+
+        event.setCancelled(true);
+        player.sendMessage(settings.getRestrictionMessage());
+    }
+
+    /**
+     * 从 "/label 参数" 中取出命令名(小写，去掉 "插件名:" 前缀)
+     */
+    private static String commandLabel(String message) {
+        int start = message.startsWith("/") ? 1 : 0;
+        int end = message.indexOf(' ', start);
+        String label = message.substring(start, end < 0 ? message.length() : end);
+        int namespace = label.indexOf(':');
+        if (namespace >= 0) {
+            label = label.substring(namespace + 1);
+        }
+        return label.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 禁止与方块或物品交互
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onPlayerInteract(PlayerInteractEvent event) {
+        if (isBlocked(event.getPlayer())) {
+            event.setCancelled(true);
+        }
+    }
+
+    /**
+     * 禁止与实体交互
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onPlayerInteractEntity(PlayerInteractEntityEvent event) {
+        if (isBlocked(event.getPlayer())) {
+            event.setCancelled(true);
+        }
+    }
+
+    /**
+     * 禁止丢弃物品
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onPlayerDropItem(PlayerDropItemEvent event) {
+        if (isBlocked(event.getPlayer())) {
+            event.setCancelled(true);
+        }
+    }
+
+    /**
+     * 禁止操作物品栏，插件界面的点击仍由 GUIClickListener 处理
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        if (isBlockedEntity(event.getWhoClicked())) {
+            event.setCancelled(true);
+        }
+    }
+
+    /**
+     * 禁止在物品栏中拖动物品
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (isBlockedEntity(event.getWhoClicked())) {
+            event.setCancelled(true);
+        }
+    }
+
+    private boolean isBlockedEntity(HumanEntity entity) {
+        return entity instanceof Player && isBlocked((Player) entity);
+    }
+}
@@ -0,0 +1,13 @@
+package cn.popcraft.verify.gui;
+
+/**
+ * 界面格子对应的点击动作
+ * 作者: Popcraft
+ */
+public enum GUIAction {
+    NONE,           // 无动作
+    CLOSE,          // 关闭界面
+    VIEW_PAGE,      // 查看书页
+    START_VERIFY,   // 开始验证
+    COPY_CODE       // 复制验证码
+}
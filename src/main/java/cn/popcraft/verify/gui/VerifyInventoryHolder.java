@@ -0,0 +1,64 @@
+package cn.popcraft.verify.gui;
+
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+/**
+ * 插件界面的持有者
+ * 作者: Popcraft
+ *
+ * 用于在点击事件中识别插件自己的界面，并通过预先计算好的
+ * 格子 → 动作 表分发点击，不需要比较标题或物品名称。
+ */
+public class VerifyInventoryHolder implements InventoryHolder {
+
+    /**
+     * 界面类型
+     */
+    public enum Type {
+        RULE_BOOK,  // 规则书界面
+        VERIFY      // 验证界面
+    }
+
+    private final Type type;
+    private final GUIAction[] slotActions;
+    private final String verificationCode;
+    private Inventory inventory;
+
+    /**
+     * @param slotActions      格子动作表，多个界面可以共用同一个数组，不可修改
+     * @param verificationCode 界面对应的验证码，规则书界面为 null
+     */
+    public VerifyInventoryHolder(Type type, GUIAction[] slotActions, String verificationCode) {
+        this.type = type;
+        this.slotActions = slotActions;
+        this.verificationCode = verificationCode;
+    }
+
+    public Type getType() { return type; }
+    public String getVerificationCode() { return verificationCode; }
+
+    /**
+     * 获取格子对应的动作，界面外的格子返回 NONE
+     */
+    public GUIAction getAction(int rawSlot) {
+        if (rawSlot < 0 || rawSlot >= slotActions.length) {
+            return GUIAction.NONE;
+        }
+        return slotActions[rawSlot];
+    }
+
+    /**
+     * 创建由此持有者持有的界面
+     */
+    public Inventory createInventory(int size, String title) {
+        this.inventory = Bukkit.createInventory(this, size, title);
+        return inventory;
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+}
@@ -1,6 +1,9 @@
 package cn.popcraft.verify.managers;
 
 import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.audit.AuditEvent;
+import cn.popcraft.verify.utils.MessageTemplate;
+import cn.popcraft.verify.utils.WorkQueue;
 import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.HoverEvent;
@@ -12,6 +15,8 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.BookMeta;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -20,41 +25,83 @@ import java.util.List;
  * 
  * 负责:
  * - 规则书创建
- * - 书页管理
+ * - 书页管理(按配置版本缓存处理后的书页和规则书)
  * - 书籍展示
  */
 public class BookManager {
     
     private final VerifyPlugin plugin;
+    private volatile BookCache cache;
+    
+    /**
+     * 规则书缓存，按配置版本构建一次
+     */
+    private static final class BookCache {
+        private final int version;
+        private final List<String> processedPages;
+        private final ItemStack ruleBook;
+        
+        private BookCache(int version, List<String> processedPages, ItemStack ruleBook) {
+            this.version = version;
+            this.processedPages = processedPages;
+            this.ruleBook = ruleBook;
+        }
+    }
     
     public BookManager(VerifyPlugin plugin) {
         this.plugin = plugin;
     }
     
     /**
-     * 为玩家创建规则书
+     * 获取当前配置版本的规则书缓存，book 节变化后自动重建
      */
-    public ItemStack createRuleBook() {
-        ConfigManager configManager = plugin.getConfigManager();
+    private BookCache getCache() {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        BookCache current = cache;
+        if (current == null || current.version != settings.getVersion(ConfigSection.BOOK)) {
+            current = buildCache(settings);
+            cache = current;
+        }
+        return current;
+    }
+    
+    /**
+     * 构建规则书缓存
+     */
+    private BookCache buildCache(VerifySettings settings) {
+        // 将字符串列表转换为书页格式
+        List<String> pages = new ArrayList<>(settings.getBookPages().size());
+        for (String pageContent : settings.getBookPages()) {
+            pages.add(processBookPage(pageContent));
+        }
+        pages = Collections.unmodifiableList(pages);
         
         // 创建书物品
         ItemStack book = new ItemStack(Material.WRITTEN_BOOK);
         BookMeta bookMeta = (BookMeta) book.getItemMeta();
         
         // 设置书的基本信息
-        bookMeta.setTitle(configManager.getBookTitle());
-        bookMeta.setAuthor(configManager.getBookAuthor());
-        
-        // 获取书页内容
-        List<String> pages = configManager.getBookPages();
-        
-        // 将字符串列表转换为书页格式
-        for (String pageContent : pages) {
-            bookMeta.addPage(processBookPage(pageContent));
-        }
+        bookMeta.setTitle(settings.getBookTitle());
+        bookMeta.setAuthor(settings.getBookAuthor());
+        bookMeta.setPages(pages);
         
         book.setItemMeta(bookMeta);
-        return book;
+        return new BookCache(settings.getVersion(ConfigSection.BOOK), pages, book);
+    }
+    
+    /**
+     * 使规则书缓存失效，下次使用时重新构建
+     */
+    public void invalidateCache() {
+        cache = null;
+    }
+    
+    /**
+     * 为玩家创建规则书
+     */
+    public ItemStack createRuleBook() {
+        // 返回副本，调用方修改物品不会影响缓存
+        return getCache().ruleBook.clone();
     }
     
     /**
@@ -83,10 +130,6 @@ public class BookManager {
             if (plugin.getConfigManager().useGUIBook()) {
                 // 使用GUI界面展示规则书
                 plugin.getGUIManager().openRuleBookGUI(player);
-                
-                if (plugin.getConfigManager().logVerifications()) {
-                    plugin.getLogger().info("为玩家 " + player.getName() + " 展示了规则书界面");
-                }
             } else {
                 // 使用原有的实体书方式
                 showPhysicalBook(player);
@@ -111,7 +154,7 @@ public class BookManager {
         // 自动打开书（如果配置启用）
         if (plugin.getConfigManager().isBookAutoOpen()) {
             // 延迟一tick再打开书，确保物品已经添加到背包
-            plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+            plugin.getWorkQueue().submitLater(WorkQueue.Priority.LOW, player, () -> {
                 try {
                     player.openBook(ruleBook);
                 } catch (Exception e) {
@@ -120,9 +163,7 @@ public class BookManager {
             }, 1L);
         }
         
-        if (plugin.getConfigManager().logVerifications()) {
-            plugin.getLogger().info("为玩家 " + player.getName() + " 发送了实体规则书");
-        }
+        plugin.getAuditLog().record(AuditEvent.RULE_BOOK_SENT, player, null);
     }
     
     /**
@@ -147,7 +188,7 @@ public class BookManager {
      * 创建欢迎书
      */
     public ItemStack createWelcomeBook(Player player) {
-        ConfigManager configManager = plugin.getConfigManager();
+        VerifySettings settings = plugin.getConfigManager().getSettings();
         
         ItemStack book = new ItemStack(Material.WRITTEN_BOOK);
         BookMeta bookMeta = (BookMeta) book.getItemMeta();
@@ -157,24 +198,22 @@ public class BookManager {
         String welcomeTitle = "§a欢迎 " + playerName + "！";
         
         bookMeta.setTitle(welcomeTitle);
-        bookMeta.setAuthor(configManager.getBookAuthor());
+        bookMeta.setAuthor(settings.getBookAuthor());
         
-        // 创建欢迎页面
-        List<String> welcomePages = new java.util.ArrayList<>();
-        welcomePages.add(
+        // 创建欢迎页面，其余书页使用缓存中已处理好的内容
+        List<String> processedPages = getCache().processedPages;
+        List<String> welcomePages = new ArrayList<>(processedPages.size() + 1);
+        welcomePages.add(processBookPage(
             "§l§a欢迎来到我们的服务器！\n\n" +
             "§r§7亲爱的 §b" + playerName + "§7,\n\n" +
             "§r§7感谢您通过验证并加入我们！\n" +
             "§r§7希望您在这里度过愉快的时光。\n\n" +
             "§r§2祝您游戏愉快！\n" +
             "§r§6服务器管理团队"
-        );
+        ));
+        welcomePages.addAll(processedPages);
         
-        welcomePages.addAll(configManager.getBookPages());
-        
-        for (String pageContent : welcomePages) {
-            bookMeta.addPage(processBookPage(pageContent));
-        }
+        bookMeta.setPages(welcomePages);
         
         book.setItemMeta(bookMeta);
         return book;
@@ -184,8 +223,6 @@ public class BookManager {
      * 发送验证链接到聊天栏
      */
     public void sendVerificationLink(Player player, String verificationCode) {
-        ConfigManager configManager = plugin.getConfigManager();
-        
         // 创建验证链接组件
         TextComponent verifyLink = new TextComponent("§a[点击验证]");
         verifyLink.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/verify " + verificationCode));
@@ -205,14 +242,12 @@ public class BookManager {
      * 发送快速验证消息
      */
     public void sendQuickVerifyMessage(Player player, String verificationCode) {
-        ConfigManager configManager = plugin.getConfigManager();
-        List<String> joinMessages = configManager.getJoinMessages();
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        String playerName = player.getName();
         
         // 发送基础消息
-        for (String message : joinMessages) {
-            message = message.replace("{code}", verificationCode);
-            message = message.replace("{timeout}", String.valueOf(configManager.getVerificationTimeout()));
-            player.sendMessage(net.md_5.bungee.api.ChatColor.translateAlternateColorCodes('&', message));
+        for (MessageTemplate template : settings.getJoinTemplates()) {
+            player.sendMessage(template.render(verificationCode, playerName, settings.getMaxAttempts()));
         }
         
         // 发送验证链接
@@ -223,11 +258,11 @@ public class BookManager {
      * 发送验证成功消息
      */
     public void sendVerificationSuccessMessage(Player player) {
-        ConfigManager configManager = plugin.getConfigManager();
-        List<String> successMessages = configManager.getSuccessMessages();
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        String playerName = player.getName();
         
-        for (String message : successMessages) {
-            player.sendMessage(net.md_5.bungee.api.ChatColor.translateAlternateColorCodes('&', message));
+        for (MessageTemplate template : settings.getSuccessTemplates()) {
+            player.sendMessage(template.render(null, playerName, 0));
         }
     }
     
@@ -235,12 +270,11 @@ public class BookManager {
      * 发送验证失败消息
      */
     public void sendVerificationFailedMessage(Player player, int remainingAttempts) {
-        ConfigManager configManager = plugin.getConfigManager();
-        List<String> failedMessages = configManager.getFailedMessages();
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        String playerName = player.getName();
         
-        for (String message : failedMessages) {
-            message = message.replace("{attempts}", String.valueOf(remainingAttempts));
-            player.sendMessage(net.md_5.bungee.api.ChatColor.translateAlternateColorCodes('&', message));
+        for (MessageTemplate template : settings.getFailedTemplates()) {
+            player.sendMessage(template.render(null, playerName, remainingAttempts));
         }
     }
     
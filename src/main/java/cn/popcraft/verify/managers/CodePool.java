@@ -0,0 +1,261 @@
+package cn.popcraft.verify.managers;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.utils.PackedCode;
+
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 验证码池
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 后台线程按当前配置的字符集和长度预先生成随机验证码
+ * - 保证正在使用(池中或会话中)的验证码互不相同(忽略大小写)
+ * - 池为空时在调用线程中直接生成
+ *
+ * SecureRandom 在后台线程中创建和使用，初始化播种不会阻塞主线程。
+ * 自定义验证码(CUSTOM)不经过验证码池。
+ *
+ * 正在使用的验证码按 PackedCode 编码(已统一为大写)记录，会话表在段锁内
+ * 释放验证码时不需要还原字符串。
+ */
+public class CodePool {
+
+    // 池已满时后台线程的休眠时间，取出后剩余数量低于容量的一半时会被提前唤醒
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 直接生成时遇到重复验证码的最大重试次数
+    private static final int MAX_INLINE_RETRIES = 16;
+
+    private final VerifyPlugin plugin;
+    private final Random inlineRandom;
+    // 正在使用的验证码，包括池中尚未取出的
+    private final Set<CodeKey> liveCodes = ConcurrentHashMap.newKeySet();
+    private volatile Generation generation;
+    private final LongAdder misses = new LongAdder();
+    private volatile Thread producerThread;
+    private volatile boolean running;
+
+    /**
+     * PackedCode 编码的验证码，用作集合的键
+     */
+    private static final class CodeKey {
+        private final long high;
+        private final long low;
+
+        private CodeKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CodeKey)) {
+                return false;
+            }
+            CodeKey key = (CodeKey) other;
+            return high == key.high && low == key.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31L + low);
+        }
+    }
+
+    /**
+     * 某一配置版本下生成的验证码
+     */
+    private static final class Generation {
+        private final int version;
+        private final String characters;
+        private final int length;
+        private final int capacity;
+        private final Queue<String> codes = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private Generation(VerifySettings settings) {
+            this.version = settings.getVersion(ConfigSection.VERIFICATION);
+            this.characters = settings.getVerificationCharacters();
+            this.length = settings.getRandomCodeLength();
+            this.capacity = settings.getCodePoolSize();
+        }
+    }
+
+    public CodePool(VerifyPlugin plugin, Random inlineRandom) {
+        this.plugin = plugin;
+        this.inlineRandom = inlineRandom;
+    }
+
+    /**
+     * 启动后台生成线程，已启动时不做处理
+     */
+    public synchronized void start() {
+        if (producerThread != null) {
+            return;
+        }
+        running = true;
+        producerThread = new Thread(this::produceLoop, "Verify-Code-Pool");
+        producerThread.setDaemon(true);
+        producerThread.start();
+    }
+
+    /**
+     * 取出一个随机验证码，池为空或配置刚刚变更时直接生成
+     */
+    public String take(VerifySettings settings) {
+        Generation current = generation;
+        if (current != null && current.version == settings.getVersion(ConfigSection.VERIFICATION)) {
+            String code = current.codes.poll();
+            if (code != null) {
+                if (current.size.decrementAndGet() < current.capacity / 2) {
+                    LockSupport.unpark(producerThread);
+                }
+                return code;
+            }
+        }
+
+        misses.increment();
+        LockSupport.unpark(producerThread);
+        return generateInline(settings);
+    }
+
+    /**
+     * 在调用线程中生成验证码，尽量避开正在使用的验证码
+     */
+    private String generateInline(VerifySettings settings) {
+        String code = null;
+        for (int i = 0; i < MAX_INLINE_RETRIES; i++) {
+            code = VerificationManager.generateRandomCode(inlineRandom,
+                settings.getVerificationCharacters(), settings.getRandomCodeLength());
+            if (liveCodes.add(key(code))) {
+                return code;
+            }
+        }
+        // 验证码空间几乎用尽(长度配置过短)，允许重复
+        return code;
+    }
+
+    /**
+     * 会话结束后释放验证码，之后可以再次分配
+     */
+    public void release(String code) {
+        if (code != null) {
+            release(PackedCode.packHigh(code, 0, code.length()), PackedCode.packLow(code, 0, code.length()));
+        }
+    }
+
+    /**
+     * 释放 PackedCode 编码的验证码，无法编码的自定义验证码不在池中，直接忽略
+     * 在会话表的段锁内调用，只做一次集合删除
+     */
+    public void release(long codeHigh, long codeLow) {
+        if (codeHigh != PackedCode.INVALID) {
+            liveCodes.remove(new CodeKey(codeHigh, codeLow));
+        }
+    }
+
+    /**
+     * 后台生成循环: 补满当前配置版本的池，verification 节变化时丢弃旧池
+     */
+    private void produceLoop() {
+        Random random = new SecureRandom();
+        int builtVersion = 0;
+
+        while (running) {
+            VerifySettings settings = plugin.getConfigManager().getSettings();
+            if (settings.getVersion(ConfigSection.VERIFICATION) != builtVersion) {
+                Generation old = generation;
+                generation = settings.isCustomCode() || settings.getCodePoolSize() <= 0 ? null : new Generation(settings);
+                builtVersion = settings.getVersion(ConfigSection.VERIFICATION);
+                drain(old);
+            }
+
+            Generation current = generation;
+            int failures = 0;
+            while (running && current != null && current.size.get() < current.capacity && failures < MAX_INLINE_RETRIES) {
+                String code = VerificationManager.generateRandomCode(random, current.characters, current.length);
+                if (!liveCodes.add(key(code))) {
+                    failures++;
+                    continue;
+                }
+                current.codes.offer(code);
+                current.size.incrementAndGet();
+                failures = 0;
+            }
+
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+
+        drain(generation);
+    }
+
+    /**
+     * 释放旧池中未被取出的验证码
+     */
+    private void drain(Generation old) {
+        if (old == null) {
+            return;
+        }
+        String code;
+        while ((code = old.codes.poll()) != null) {
+            old.size.decrementAndGet();
+            release(code);
+        }
+    }
+
+    /**
+     * 随机验证码只使用可编码的字符，编码不会失败
+     */
+    private static CodeKey key(String code) {
+        return new CodeKey(PackedCode.packHigh(code, 0, code.length()), PackedCode.packLow(code, 0, code.length()));
+    }
+
+    /**
+     * 获取池中可用的验证码数量
+     */
+    public int getAvailable() {
+        Generation current = generation;
+        return current == null ? 0 : current.size.get();
+    }
+
+    /**
+     * 获取池的容量，未启用时为 0
+     */
+    public int getCapacity() {
+        Generation current = generation;
+        return current == null ? 0 : current.capacity;
+    }
+
+    /**
+     * 获取池为空时直接生成的次数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 停止后台生成线程
+     */
+    public synchronized void close() {
+        running = false;
+        if (producerThread != null) {
+            LockSupport.unpark(producerThread);
+            try {
+                producerThread.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            producerThread = null;
+        }
+    }
+}
@@ -1,55 +1,234 @@
 package cn.popcraft.verify.managers;
 
 import cn.popcraft.verify.VerifyPlugin;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * 配置管理器
  * 作者: Popcraft
+ *
+ * 负责:
+ * - 解析 config.yml 并编译配置快照
+ * - 按顶层配置节比较新旧配置，给出发生变化的节
+ *
+ * 解析(parse)可在任意线程进行，解析结果通过 apply 在主线程生效。
+ * 只在启动时读取的设置不参与比较，修改后提示需要重启。
  */
 public class ConfigManager {
     
+    // 只在启动时读取的设置，修改后需要重启才能生效
+    private static final Set<String> RESTART_REQUIRED = Collections.singleton("audit.buffer-size");
+    
     private final VerifyPlugin plugin;
-    private FileConfiguration config;
-    private File configFile;
+    private final File configFile;
+    private volatile FileConfiguration config;
+    private volatile VerifySettings settings;
+    
+    // 已生效配置的各节取值，作为下一次比较的基准
+    private Map<ConfigSection, Map<String, Object>> appliedValues;
+    private Map<String, Object> startupValues;
+    private volatile Set<String> pendingRestart = Collections.emptySet();
+    private int appliedSequence;
+    private int sequence;
+    private int version;
+    
+    /**
+     * 一次解析的结果
+     */
+    public static final class Reload {
+        private final int sequence;
+        private final FileConfiguration config;
+        private final Map<ConfigSection, Map<String, Object>> values;
+        private final Map<String, Object> restartValues;
+        private final VerifySettings base;
+        private final VerifySettings settings;
+        private final Set<ConfigSection> changed;
+        
+        private Reload(int sequence, FileConfiguration config, Map<ConfigSection, Map<String, Object>> values,
+                       Map<String, Object> restartValues, VerifySettings base, VerifySettings settings,
+                       Set<ConfigSection> changed) {
+            this.sequence = sequence;
+            this.config = config;
+            this.values = values;
+            this.restartValues = restartValues;
+            this.base = base;
+            this.settings = settings;
+            this.changed = changed;
+        }
+    }
     
     public ConfigManager(VerifyPlugin plugin) {
         this.plugin = plugin;
+        this.configFile = new File(plugin.getDataFolder(), "config.yml");
         loadConfig();
     }
     
     /**
-     * 加载配置文件
+     * 加载配置文件，文件有语法错误时按默认值加载
      */
     public void loadConfig() {
-        if (configFile == null) {
-            configFile = new File(plugin.getDataFolder(), "config.yml");
+        saveDefault();
+        apply(prepare(YamlConfiguration.loadConfiguration(configFile)));
+    }
+    
+    /**
+     * 重新加载配置(当前线程解析并立即生效)
+     * 文件有语法错误时保留当前配置
+     *
+     * @return 发生变化的配置节
+     */
+    public Set<ConfigSection> reloadConfig() {
+        try {
+            return apply(parse());
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().severe("无法解析配置文件，保留当前配置: " + e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+    
+    /**
+     * 解析配置文件并与已生效的配置比较，可在异步线程调用
+     *
+     * @throws InvalidConfigurationException 文件有语法错误
+     */
+    public Reload parse() throws IOException, InvalidConfigurationException {
+        saveDefault();
+        YamlConfiguration parsed = new YamlConfiguration();
+        parsed.load(configFile);
+        return prepare(parsed);
+    }
+    
+    /**
+     * 使解析结果生效(主线程)
+     * 比已生效结果更早解析的结果直接丢弃
+     *
+     * @return 相对生效前的配置发生变化的配置节
+     */
+    public synchronized Set<ConfigSection> apply(Reload reload) {
+        if (reload.sequence < appliedSequence) {
+            return Collections.emptySet();
+        }
+        
+        Set<ConfigSection> changed = reload.changed;
+        VerifySettings compiled = reload.settings;
+        // 解析之后又有其他结果生效，需要以当前配置为基准重新比较
+        if (reload.base != settings) {
+            changed = diff(reload.values);
+            compiled = compile(reload.config, changed);
         }
         
+        config = reload.config;
+        settings = compiled;
+        appliedValues = reload.values;
+        appliedSequence = reload.sequence;
+        updatePendingRestart(reload.restartValues);
+        return changed;
+    }
+    
+    /**
+     * 与启动时的取值比较，记录修改后尚未生效的设置
+     */
+    private void updatePendingRestart(Map<String, Object> restartValues) {
+        if (startupValues == null) {
+            startupValues = restartValues;
+            return;
+        }
+        Set<String> pending = new TreeSet<>();
+        for (String key : RESTART_REQUIRED) {
+            if (!Objects.equals(startupValues.get(key), restartValues.get(key))) {
+                pending.add(key);
+            }
+        }
+        if (!pending.isEmpty() && !pending.equals(pendingRestart)) {
+            plugin.getLogger().warning("以下设置需要重启服务器后生效: " + String.join(", ", pending));
+        }
+        pendingRestart = Collections.unmodifiableSet(pending);
+    }
+    
+    private synchronized Reload prepare(FileConfiguration parsed) {
+        Map<ConfigSection, Map<String, Object>> values = new EnumMap<>(ConfigSection.class);
+        for (ConfigSection section : ConfigSection.values()) {
+            values.put(section, sectionValues(parsed, section.getKey()));
+        }
+        Map<String, Object> restartValues = new HashMap<>();
+        for (String key : RESTART_REQUIRED) {
+            restartValues.put(key, parsed.get(key));
+        }
+        Set<ConfigSection> changed = diff(values);
+        return new Reload(++sequence, parsed, values, restartValues, settings, compile(parsed, changed), changed);
+    }
+    
+    private Set<ConfigSection> diff(Map<ConfigSection, Map<String, Object>> values) {
+        Set<ConfigSection> changed = EnumSet.noneOf(ConfigSection.class);
+        for (ConfigSection section : ConfigSection.values()) {
+            if (appliedValues == null || !values.get(section).equals(appliedValues.get(section))) {
+                changed.add(section);
+            }
+        }
+        return Collections.unmodifiableSet(changed);
+    }
+    
+    private VerifySettings compile(FileConfiguration parsed, Set<ConfigSection> changed) {
+        // 内容没有变化时沿用当前快照，缓存不会失效
+        if (settings != null && changed.isEmpty()) {
+            return settings;
+        }
+        return VerifySettings.compile(parsed, ++version, settings, changed);
+    }
+    
+    /**
+     * 收集配置节下所有叶子节点的值(不含需要重启的设置)
+     */
+    private static Map<String, Object> sectionValues(FileConfiguration parsed, String key) {
+        Map<String, Object> values = new HashMap<>();
+        ConfigurationSection section = parsed.getConfigurationSection(key);
+        if (section == null) {
+            if (parsed.contains(key)) {
+                values.put("", parsed.get(key));
+            }
+            return values;
+        }
+        for (String path : section.getKeys(true)) {
+            if (!section.isConfigurationSection(path) && !RESTART_REQUIRED.contains(key + "." + path)) {
+                values.put(path, section.get(path));
+            }
+        }
+        return values;
+    }
+    
+    private void saveDefault() {
         if (!configFile.exists()) {
             plugin.saveResource("config.yml", false);
         }
-        
-        config = YamlConfiguration.loadConfiguration(configFile);
     }
     
     /**
-     * 重新加载配置
+     * 获取配置文件
      */
-    public void reloadConfig() {
-        loadConfig();
+    public File getConfigFile() {
+        return configFile;
     }
     
     /**
      * 保存配置
      */
     public void saveConfig() {
-        if (config == null || configFile == null) {
+        if (config == null) {
             return;
         }
         
@@ -67,62 +246,97 @@ public class ConfigManager {
         return config;
     }
     
+    /**
+     * 获取当前配置快照
+     */
+    public VerifySettings getSettings() {
+        return settings;
+    }
+    
+    /**
+     * 获取已修改但需要重启才能生效的设置
+     */
+    public Set<String> getPendingRestart() {
+        return pendingRestart;
+    }
+    
     // ========== 验证配置相关方法 ==========
     
     /**
      * 是否启用验证功能
      */
     public boolean isVerificationEnabled() {
-        return config.getBoolean("verification.enabled", true);
+        return settings.isVerificationEnabled();
     }
     
     /**
      * 获取验证类型
      */
     public String getVerificationType() {
-        return config.getString("verification.type", "RANDOM");
+        return settings.isCustomCode() ? "CUSTOM" : "RANDOM";
     }
     
     /**
      * 获取自定义验证码
      */
     public String getCustomVerificationCode() {
-        return config.getString("verification.custom-code", "WELCOME2024");
+        return settings.getCustomVerificationCode();
     }
     
     /**
      * 获取随机验证码长度
      */
     public int getRandomCodeLength() {
-        return config.getInt("verification.random-length", 6);
+        return settings.getRandomCodeLength();
     }
     
     /**
      * 获取验证码字符集
      */
     public String getVerificationCharacters() {
-        return config.getString("verification.characters", "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789");
+        return settings.getVerificationCharacters();
     }
     
     /**
      * 获取验证超时时间(秒)
      */
     public int getVerificationTimeout() {
-        return config.getInt("verification.timeout", 300);
+        return settings.getVerificationTimeout();
     }
     
     /**
      * 获取最大重试次数
      */
     public int getMaxAttempts() {
-        return config.getInt("verification.max-attempts", 3);
+        return settings.getMaxAttempts();
     }
     
     /**
      * 获取验证失败踢出消息
      */
     public String getKickMessage() {
-        return config.getString("verification.kick-message", "§c验证码验证失败！");
+        return settings.getKickMessage();
+    }
+    
+    /**
+     * 是否记住已验证的玩家
+     */
+    public boolean isRememberVerifiedEnabled() {
+        return settings.isRememberVerifiedEnabled();
+    }
+    
+    /**
+     * 获取验证记录有效期(天)
+     */
+    public int getRememberExpireDays() {
+        return (int) (settings.getRememberExpireMillis() / 86400000L);
+    }
+    
+    /**
+     * 是否要求与验证时相同的 IP
+     */
+    public boolean isRememberRequireSameIp() {
+        return settings.isRememberRequireSameIp();
     }
     
     // ========== 规则书配置相关方法 ==========
@@ -131,42 +345,42 @@ public class ConfigManager {
      * 是否启用规则书功能
      */
     public boolean isBookEnabled() {
-        return config.getBoolean("book.enabled", true);
+        return settings.isBookEnabled();
     }
     
     /**
      * 是否在验证成功后自动打开规则书
      */
     public boolean isBookAutoOpen() {
-        return config.getBoolean("book.auto-open", true);
+        return settings.isBookAutoOpen();
     }
     
     /**
      * 是否使用GUI界面展示规则书
      */
     public boolean useGUIBook() {
-        return config.getBoolean("book.use-gui", true);
+        return settings.useGUIBook();
     }
     
     /**
      * 获取书标题
      */
     public String getBookTitle() {
-        return config.getString("book.title", "§l服务器规则");
+        return settings.getBookTitle();
     }
     
     /**
      * 获取书作者
      */
     public String getBookAuthor() {
-        return config.getString("book.author", "§6管理员");
+        return settings.getBookAuthor();
     }
     
     /**
      * 获取书页内容
      */
     public List<String> getBookPages() {
-        return config.getStringList("book.pages");
+        return settings.getBookPages();
     }
     
     // ========== 消息配置相关方法 ==========
@@ -175,28 +389,28 @@ public class ConfigManager {
      * 获取玩家加入时的验证消息
      */
     public List<String> getJoinMessages() {
-        return config.getStringList("messages.join-message");
+        return settings.getJoinMessages();
     }
     
     /**
      * 获取验证成功消息
      */
     public List<String> getSuccessMessages() {
-        return config.getStringList("messages.success-message");
+        return settings.getSuccessMessages();
     }
     
     /**
      * 获取验证失败消息
      */
     public List<String> getFailedMessages() {
-        return config.getStringList("messages.failed-message");
+        return settings.getFailedMessages();
     }
     
     /**
      * 获取验证超时消息
      */
     public List<String> getTimeoutMessages() {
-        return config.getStringList("messages.timeout-message");
+        return settings.getTimeoutMessages();
     }
     
     // ========== 其他设置相关方法 ==========
@@ -205,27 +419,27 @@ public class ConfigManager {
      * 是否给予奖励
      */
     public boolean giveRewards() {
-        return config.getBoolean("settings.give-rewards", false);
+        return settings.giveRewards();
     }
     
     /**
      * 获取奖励命令列表
      */
     public List<String> getRewardCommands() {
-        return config.getStringList("settings.reward-commands");
+        return settings.getRewardCommands();
     }
     
     /**
      * 是否记录验证日志
      */
     public boolean logVerifications() {
-        return config.getBoolean("settings.log-verifications", true);
+        return settings.logVerifications();
     }
     
     /**
      * 是否启用调试模式
      */
     public boolean isDebugEnabled() {
-        return config.getBoolean("settings.debug", false);
+        return settings.isDebugEnabled();
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package cn.popcraft.verify.managers;
+
+import cn.popcraft.verify.VerifyPlugin;
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * 配置热重载
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 在后台线程解析 config.yml 并比较配置节，主线程只替换发生变化的部分
+ * - 监视插件目录，config.yml 被修改后自动重载
+ *
+ * 编辑器保存文件时通常会连续产生多个事件，config.yml 的最后一个事件之后
+ * 安静 500 毫秒才开始解析，文件有语法错误时保留当前配置。
+ */
+public class ConfigReloader {
+
+    private static final long DEBOUNCE_MILLIS = 500L;
+
+    private final VerifyPlugin plugin;
+    private final ExecutorService parser;
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    public ConfigReloader(VerifyPlugin plugin) {
+        this.plugin = plugin;
+        this.parser = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "Verify-Config");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 在后台线程重新解析配置，完成后在主线程生效
+     *
+     * @param onApplied 生效后在主线程调用，参数为发生变化的配置节，可为 null
+     * @param onError   解析失败时在主线程调用，可为 null
+     */
+    public void reload(Consumer<Set<ConfigSection>> onApplied, Consumer<Exception> onError) {
+        parser.execute(() -> {
+            ConfigManager.Reload reload;
+            try {
+                reload = plugin.getConfigManager().parse();
+            } catch (IOException | InvalidConfigurationException e) {
+                plugin.getLogger().severe("无法解析配置文件，保留当前配置: " + e.getMessage());
+                if (onError != null) {
+                    plugin.getTaskScheduler().runGlobal(() -> onError.accept(e));
+                }
+                return;
+            }
+
+            plugin.getTaskScheduler().runGlobal(() -> {
+                Set<ConfigSection> changed = plugin.getConfigManager().apply(reload);
+                plugin.applyConfigChanges(changed);
+                if (onApplied != null) {
+                    onApplied.accept(changed);
+                }
+            });
+        });
+    }
+
+    /**
+     * 按配置开启或关闭文件监视
+     */
+    public synchronized void update() {
+        if (plugin.getConfigManager().getSettings().isAutoReload()) {
+            startWatching();
+        } else {
+            stopWatching();
+        }
+    }
+
+    private void startWatching() {
+        if (watcherThread != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            plugin.getDataFolder().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "无法监视配置文件，自动重载已关闭", e);
+            closeWatchService();
+            return;
+        }
+
+        watcherThread = new Thread(() -> watchLoop(watchService), "Verify-Config-Watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    private void stopWatching() {
+        closeWatchService();
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+            watcherThread = null;
+        }
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响重载
+            }
+            watchService = null;
+        }
+    }
+
+    private void watchLoop(WatchService service) {
+        Path fileName = plugin.getConfigManager().getConfigFile().toPath().getFileName();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!drain(service.take(), fileName)) {
+                    continue;
+                }
+
+                // 等 config.yml 安静下来再解析，目录里其他文件的事件不推迟重载
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0L) {
+                    WatchKey next = service.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (drain(next, fileName)) {
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS);
+                    }
+                }
+
+                reload(changed -> {
+                    if (!changed.isEmpty()) {
+                        plugin.getLogger().info("检测到 config.yml 变更，已重载: " + describe(changed));
+                    }
+                }, null);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 停止监视
+        }
+    }
+
+    private static boolean drain(WatchKey key, Path fileName) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                touched = true;
+            }
+        }
+        key.reset();
+        return touched;
+    }
+
+    /**
+     * 以配置文件中的键名列出配置节
+     */
+    public static String describe(Set<ConfigSection> sections) {
+        StringBuilder builder = new StringBuilder();
+        for (ConfigSection section : sections) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(section.getKey());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 停止文件监视和解析线程
+     */
+    public synchronized void close() {
+        stopWatching();
+        parser.shutdownNow();
+    }
+}
@@ -0,0 +1,34 @@
+package cn.popcraft.verify.managers;
+
+/**
+ * 配置文件的顶层节
+ * 作者: Popcraft
+ *
+ * 重载时按节比较新旧配置，只有发生变化的节对应的缓存和服务会被重建。
+ */
+public enum ConfigSection {
+    VERIFICATION("verification"),
+    ADMISSION("admission"),
+    REPUTATION("reputation"),
+    RESTRICTION("restriction"),
+    BOOK("book"),
+    MESSAGES("messages"),
+    SETTINGS("settings"),
+    AUDIT("audit"),
+    WORK_QUEUE("work-queue"),
+    NETWORK("network"),
+    METRICS("metrics");
+
+    private final String key;
+
+    ConfigSection(String key) {
+        this.key = key;
+    }
+
+    /**
+     * 配置文件中的键名
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -1,8 +1,10 @@
 package cn.popcraft.verify.managers;
 
 import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.audit.AuditEvent;
+import cn.popcraft.verify.gui.GUIAction;
+import cn.popcraft.verify.gui.VerifyInventoryHolder;
 import net.md_5.bungee.api.ChatColor;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
@@ -10,6 +12,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * GUI管理器
@@ -18,46 +21,118 @@ import java.util.Arrays;
  * 负责:
  * - 规则书界面管理
  * - 验证界面管理
+ * - 界面物品模板缓存
  * - 其他GUI功能
  */
 public class GUIManager {
     
+    private static final int RULE_BOOK_SIZE = 54;
+    private static final int VERIFY_SIZE = 27;
+    
+    // 验证界面的格子动作表，与配置无关
+    private static final GUIAction[] VERIFY_ACTIONS = new GUIAction[VERIFY_SIZE];
+    
+    static {
+        Arrays.fill(VERIFY_ACTIONS, GUIAction.NONE);
+        VERIFY_ACTIONS[11] = GUIAction.START_VERIFY;
+        VERIFY_ACTIONS[15] = GUIAction.COPY_CODE;
+    }
+    
     private final VerifyPlugin plugin;
+    private volatile GUITemplates templates;
+    
+    /**
+     * 界面物品模板，按配置版本构建一次，打开界面时直接复制到新界面中
+     */
+    private static final class GUITemplates {
+        private final int version;
+        private final String ruleBookTitle;
+        private final ItemStack[] ruleBookContents;
+        private final GUIAction[] ruleBookActions;
+        private final String verifyTitle;
+        private final ItemStack verifyButton;
+        
+        private GUITemplates(int version, String ruleBookTitle, ItemStack[] ruleBookContents,
+                             GUIAction[] ruleBookActions, String verifyTitle, ItemStack verifyButton) {
+            this.version = version;
+            this.ruleBookTitle = ruleBookTitle;
+            this.ruleBookContents = ruleBookContents;
+            this.ruleBookActions = ruleBookActions;
+            this.verifyTitle = verifyTitle;
+            this.verifyButton = verifyButton;
+        }
+    }
     
     public GUIManager(VerifyPlugin plugin) {
         this.plugin = plugin;
     }
     
     /**
-     * 打开规则书界面
+     * 获取当前配置版本的界面模板，book 节变化后自动重建
      */
-    public void openRuleBookGUI(Player player) {
-        ConfigManager configManager = plugin.getConfigManager();
-        
-        // 创建界面 (54格 = 6行)
-        Inventory inventory = Bukkit.createInventory(null, 54, 
-            ChatColor.translateAlternateColorCodes('&', configManager.getBookTitle()));
-        
-        // 获取配置的书页内容
-        String[] pages = configManager.getBookPages().toArray(new String[0]);
+    private GUITemplates getTemplates() {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        GUITemplates current = templates;
+        if (current == null || current.version != settings.getVersion(ConfigSection.BOOK)) {
+            current = buildTemplates(settings);
+            templates = current;
+        }
+        return current;
+    }
+    
+    /**
+     * 构建界面模板
+     */
+    private GUITemplates buildTemplates(VerifySettings settings) {
+        ItemStack[] contents = new ItemStack[RULE_BOOK_SIZE];
+        GUIAction[] actions = new GUIAction[RULE_BOOK_SIZE];
+        Arrays.fill(actions, GUIAction.NONE);
         
         // 创建书页按钮
-        for (int i = 0; i < Math.min(pages.length, 45); i++) {
-            ItemStack pageItem = createPageItem(i + 1, pages[i]);
-            inventory.setItem(i, pageItem);
+        List<String> pages = settings.getBookPages();
+        for (int i = 0; i < Math.min(pages.size(), 45); i++) {
+            contents[i] = createPageItem(i + 1, pages.get(i));
+            actions[i] = GUIAction.VIEW_PAGE;
         }
         
         // 创建关闭按钮
-        ItemStack closeButton = createCloseButton();
-        inventory.setItem(53, closeButton);
+        contents[53] = createCloseButton();
+        actions[53] = GUIAction.CLOSE;
+        
+        return new GUITemplates(
+            settings.getVersion(ConfigSection.BOOK),
+            ChatColor.translateAlternateColorCodes('&', settings.getBookTitle()),
+            contents,
+            actions,
+            ChatColor.translateAlternateColorCodes('&', "§l验证码验证"),
+            createVerifyButton()
+        );
+    }
+    
+    /**
+     * 使界面模板失效，下次打开界面时重新构建
+     */
+    public void invalidateTemplates() {
+        templates = null;
+    }
+    
+    /**
+     * 打开规则书界面
+     */
+    public void openRuleBookGUI(Player player) {
+        GUITemplates current = getTemplates();
+        
+        // 创建界面 (54格 = 6行)，物品从模板复制
+        VerifyInventoryHolder holder = new VerifyInventoryHolder(
+            VerifyInventoryHolder.Type.RULE_BOOK, current.ruleBookActions, null);
+        Inventory inventory = holder.createInventory(RULE_BOOK_SIZE, current.ruleBookTitle);
+        inventory.setContents(current.ruleBookContents);
         
         // 打开界面
         player.openInventory(inventory);
         
         // 记录日志
-        if (configManager.logVerifications()) {
-            plugin.getLogger().info("为玩家 " + player.getName() + " 打开了规则书界面");
-        }
+        plugin.getAuditLog().record(AuditEvent.RULE_BOOK_GUI_OPENED, player, null);
     }
     
     /**
@@ -106,19 +181,21 @@ public class GUIManager {
      * 创建验证界面
      */
     public void openVerifyGUI(Player player, String verificationCode) {
+        GUITemplates current = getTemplates();
+        
         // 创建界面
-        Inventory inventory = Bukkit.createInventory(null, 27, 
-            ChatColor.translateAlternateColorCodes('&', "§l验证码验证"));
+        VerifyInventoryHolder holder = new VerifyInventoryHolder(
+            VerifyInventoryHolder.Type.VERIFY, VERIFY_ACTIONS, verificationCode);
+        Inventory inventory = holder.createInventory(VERIFY_SIZE, current.verifyTitle);
         
         // 创建验证码显示物品
         ItemStack codeDisplay = createCodeDisplay(verificationCode);
         inventory.setItem(13, codeDisplay);
         
-        // 创建验证按钮
-        ItemStack verifyButton = createVerifyButton();
-        inventory.setItem(11, verifyButton);
+        // 验证按钮与玩家无关，使用模板
+        inventory.setItem(11, current.verifyButton);
         
-        // 创建复制按钮
+        // 创建复制按钮(包含验证码，每个玩家单独创建)
         ItemStack copyButton = createCopyButton(verificationCode);
         inventory.setItem(15, copyButton);
         
@@ -126,9 +203,7 @@ public class GUIManager {
         player.openInventory(inventory);
         
         // 记录日志
-        if (plugin.getConfigManager().logVerifications()) {
-            plugin.getLogger().info("为玩家 " + player.getName() + " 打开了验证界面");
-        }
+        plugin.getAuditLog().record(AuditEvent.VERIFY_GUI_OPENED, player, null);
     }
     
     /**
@@ -0,0 +1,530 @@
+package cn.popcraft.verify.managers;
+
+import cn.popcraft.verify.managers.VerificationManager.PlayerVerification;
+import cn.popcraft.verify.managers.VerificationManager.VerificationStatus;
+import cn.popcraft.verify.utils.PackedCode;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 验证会话表
+ * 作者: Popcraft
+ *
+ * 以 UUID 的两个 long 为键的开放寻址(线性探测)哈希表，会话数据按字段分别存放在基本类型数组中，
+ * 表本身不为会话创建任何对象；调用方可以为每个会话附加一个对象(例如时间轮中的超时任务)，
+ * 会话被移除或替换时随回调交还。表按哈希值分为多个段，每段使用独立的锁，不同段之间的操作互不阻塞。
+ *
+ * 内存占用: 每个槽位 61 字节(键 16 + 验证码 16 + 开始时间 8 + 截止时间 8 + 尝试次数 4
+ * + 最大尝试次数 4 + 附加对象引用 4 + 状态 1)。负载因子在 0.375 到 0.75 之间，
+ * 平均每个会话约 81 - 163 字节，10 万个会话约 8 - 16 MB。
+ *
+ * 所有状态变化(包括添加和移除)都经过 transition 方法，同时维护各状态的分段计数器，
+ * 因此 count(status) 为 O(1)，且与表中的状态保持一致。
+ */
+public final class SessionTable {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * 每个槽位占用的字节数(不含数组头)
+     */
+    public static final int BYTES_PER_SLOT = 61;
+
+    // 状态数组中 0 表示空槽位，其余为 VerificationStatus 的序号加 1
+    private static final byte EMPTY = 0;
+    private static final VerificationStatus[] STATUSES = VerificationStatus.values();
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final RemovalListener removalListener;
+    private final TransitionListener transitionListener;
+    // 各状态的会话数量，下标为 VerificationStatus 的序号
+    private final LongAdder[] statusCounts = new LongAdder[STATUSES.length];
+
+    /**
+     * 会话被移除或替换时的回调，在段锁内调用，必须足够快
+     */
+    public interface RemovalListener {
+        /**
+         * @param attachment 添加会话时附加的对象，可为 null
+         */
+        void onRemoved(long codeHigh, long codeLow, Object attachment);
+    }
+
+    /**
+     * 会话状态变化时的回调，在段锁内调用，必须足够快
+     */
+    public interface TransitionListener {
+        /**
+         * @param from 原状态，新添加的会话为 null
+         * @param to   新状态，被移除的会话为 null
+         */
+        void onTransition(UUID playerId, VerificationStatus from, VerificationStatus to);
+    }
+
+    /**
+     * 一次验证尝试的结果
+     */
+    public enum AttemptResult {
+        NO_SESSION,     // 没有会话
+        NOT_PENDING,    // 会话已不在等待验证状态
+        EXPIRED,        // 会话已超时(状态不变，由超时检查处理)
+        SUCCESS,        // 验证成功
+        WRONG,          // 验证码错误，仍可重试
+        FAILED          // 验证码错误，次数已用完(状态改为 FAILED)
+    }
+
+    public SessionTable(RemovalListener removalListener) {
+        this(removalListener, (playerId, from, to) -> { });
+    }
+
+    public SessionTable(RemovalListener removalListener, TransitionListener transitionListener) {
+        this.removalListener = removalListener;
+        this.transitionListener = transitionListener;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(INITIAL_CAPACITY);
+        }
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 一个段: 独立加锁的开放寻址表
+     */
+    private static final class Segment {
+        private long[] keyHigh;
+        private long[] keyLow;
+        private long[] codeHigh;
+        private long[] codeLow;
+        private long[] startTime;
+        private long[] deadline;
+        private int[] attempts;
+        private int[] maxAttempts;
+        private Object[] attachment;
+        private byte[] status;
+        private int size;
+
+        private Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keyHigh = new long[capacity];
+            keyLow = new long[capacity];
+            codeHigh = new long[capacity];
+            codeLow = new long[capacity];
+            startTime = new long[capacity];
+            deadline = new long[capacity];
+            attempts = new int[capacity];
+            maxAttempts = new int[capacity];
+            attachment = new Object[capacity];
+            status = new byte[capacity];
+        }
+
+        /**
+         * 查找键所在的槽位，不存在时返回 -1
+         */
+        private int find(long high, long low, int hash) {
+            int mask = status.length - 1;
+            for (int i = hash & mask; status[i] != EMPTY; i = (i + 1) & mask) {
+                if (keyHigh[i] == high && keyLow[i] == low) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 查找键所在的槽位，不存在时返回可插入的空槽位
+         */
+        private int findSlot(long high, long low, int hash) {
+            int mask = status.length - 1;
+            int i = hash & mask;
+            while (status[i] != EMPTY && (keyHigh[i] != high || keyLow[i] != low)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * 移除槽位并把后续同一探测链上的元素向前移动(不使用墓碑)
+         */
+        private void removeAt(int index) {
+            int mask = status.length - 1;
+            int hole = index;
+            for (int i = (index + 1) & mask; status[i] != EMPTY; i = (i + 1) & mask) {
+                int ideal = hash(keyHigh[i], keyLow[i]) & mask;
+                // 理想位置不在 (hole, i] 之间时可以填补空洞
+                boolean stays = hole <= i ? (hole < ideal && ideal <= i) : (hole < ideal || ideal <= i);
+                if (!stays) {
+                    move(i, hole);
+                    hole = i;
+                }
+            }
+            status[hole] = EMPTY;
+            attachment[hole] = null;
+            size--;
+        }
+
+        private void move(int from, int to) {
+            keyHigh[to] = keyHigh[from];
+            keyLow[to] = keyLow[from];
+            codeHigh[to] = codeHigh[from];
+            codeLow[to] = codeLow[from];
+            startTime[to] = startTime[from];
+            deadline[to] = deadline[from];
+            attempts[to] = attempts[from];
+            maxAttempts[to] = maxAttempts[from];
+            attachment[to] = attachment[from];
+            status[to] = status[from];
+        }
+
+        /**
+         * 超过负载因子 0.75 时扩容为两倍
+         */
+        private void ensureCapacity() {
+            if ((size + 1) * 4 <= status.length * 3) {
+                return;
+            }
+
+            long[] oldKeyHigh = keyHigh;
+            long[] oldKeyLow = keyLow;
+            long[] oldCodeHigh = codeHigh;
+            long[] oldCodeLow = codeLow;
+            long[] oldStartTime = startTime;
+            long[] oldDeadline = deadline;
+            int[] oldAttempts = attempts;
+            int[] oldMaxAttempts = maxAttempts;
+            Object[] oldAttachment = attachment;
+            byte[] oldStatus = status;
+
+            allocate(oldStatus.length * 2);
+            for (int i = 0; i < oldStatus.length; i++) {
+                if (oldStatus[i] == EMPTY) {
+                    continue;
+                }
+                int slot = findSlot(oldKeyHigh[i], oldKeyLow[i], hash(oldKeyHigh[i], oldKeyLow[i]));
+                keyHigh[slot] = oldKeyHigh[i];
+                keyLow[slot] = oldKeyLow[i];
+                codeHigh[slot] = oldCodeHigh[i];
+                codeLow[slot] = oldCodeLow[i];
+                startTime[slot] = oldStartTime[i];
+                deadline[slot] = oldDeadline[i];
+                attempts[slot] = oldAttempts[i];
+                maxAttempts[slot] = oldMaxAttempts[i];
+                attachment[slot] = oldAttachment[i];
+                status[slot] = oldStatus[i];
+            }
+        }
+    }
+
+    private static int hash(long high, long low) {
+        long h = high ^ low;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    private static byte encode(VerificationStatus status) {
+        return (byte) (status.ordinal() + 1);
+    }
+
+    private static VerificationStatus decode(byte status) {
+        return status == EMPTY ? null : STATUSES[status - 1];
+    }
+
+    /**
+     * 修改槽位状态的唯一入口，必须持有段锁。
+     * EMPTY 表示会话不存在: 从 EMPTY 转换为添加，转换为 EMPTY 为移除(调用方随后移除槽位)
+     */
+    private void transition(UUID playerId, Segment segment, int slot, byte to) {
+        byte from = segment.status[slot];
+        if (from == to) {
+            return;
+        }
+        segment.status[slot] = to;
+        if (from != EMPTY) {
+            statusCounts[from - 1].decrement();
+        }
+        if (to != EMPTY) {
+            statusCounts[to - 1].increment();
+        }
+        transitionListener.onTransition(playerId, decode(from), decode(to));
+    }
+
+    /**
+     * 添加等待验证的会话，已存在时替换
+     *
+     * @param code 验证码，无法编码时保存为 PackedCode.INVALID，校验时与自定义验证码比较
+     */
+    public void put(UUID playerId, CharSequence code, long startTime, long deadline, int maxAttempts) {
+        put(playerId, code, startTime, deadline, maxAttempts, null);
+    }
+
+    /**
+     * 添加等待验证的会话并附加一个对象，已存在时替换
+     * 附加的对象在会话被移除或替换时交给 RemovalListener
+     */
+    public void put(UUID playerId, CharSequence code, long startTime, long deadline, int maxAttempts,
+                    Object attachment) {
+        int start = PackedCode.trimStart(code);
+        int end = PackedCode.trimEnd(code, start);
+        long high = PackedCode.packHigh(code, start, end);
+        long low = PackedCode.packLow(code, start, end);
+        if (high == PackedCode.INVALID || low == PackedCode.INVALID) {
+            high = PackedCode.INVALID;
+            low = PackedCode.INVALID;
+        }
+
+        long keyHigh = playerId.getMostSignificantBits();
+        long keyLow = playerId.getLeastSignificantBits();
+        int hash = hash(keyHigh, keyLow);
+        Segment segment = segmentFor(hash);
+
+        synchronized (segment) {
+            segment.ensureCapacity();
+            int slot = segment.findSlot(keyHigh, keyLow, hash);
+            if (segment.status[slot] != EMPTY) {
+                removalListener.onRemoved(segment.codeHigh[slot], segment.codeLow[slot], segment.attachment[slot]);
+            } else {
+                segment.size++;
+            }
+
+            segment.keyHigh[slot] = keyHigh;
+            segment.keyLow[slot] = keyLow;
+            segment.codeHigh[slot] = high;
+            segment.codeLow[slot] = low;
+            segment.startTime[slot] = startTime;
+            segment.deadline[slot] = deadline;
+            segment.attempts[slot] = 0;
+            segment.maxAttempts[slot] = maxAttempts;
+            segment.attachment[slot] = attachment;
+            transition(playerId, segment, slot, encode(VerificationStatus.PENDING));
+        }
+    }
+
+    /**
+     * 移除会话
+     *
+     * @return 会话存在时返回 true
+     */
+    public boolean remove(UUID playerId) {
+        long keyHigh = playerId.getMostSignificantBits();
+        long keyLow = playerId.getLeastSignificantBits();
+        int hash = hash(keyHigh, keyLow);
+        Segment segment = segmentFor(hash);
+
+        synchronized (segment) {
+            int slot = segment.find(keyHigh, keyLow, hash);
+            if (slot < 0) {
+                return false;
+            }
+            removalListener.onRemoved(segment.codeHigh[slot], segment.codeLow[slot], segment.attachment[slot]);
+            transition(playerId, segment, slot, EMPTY);
+            segment.removeAt(slot);
+            return true;
+        }
+    }
+
+    /**
+     * 会话已到截止时间时将其移除
+     *
+     * @param unpackedCode 无法编码的验证码在快照中显示的文本
+     * @return 被移除会话的快照，会话不存在或尚未到期时返回 null
+     */
+    public PlayerVerification removeExpired(UUID playerId, long now, String unpackedCode) {
+        long keyHigh = playerId.getMostSignificantBits();
+        long keyLow = playerId.getLeastSignificantBits();
+        int hash = hash(keyHigh, keyLow);
+        Segment segment = segmentFor(hash);
+
+        synchronized (segment) {
+            int slot = segment.find(keyHigh, keyLow, hash);
+            if (slot < 0 || segment.deadline[slot] > now) {
+                return null;
+            }
+            PlayerVerification snapshot = snapshot(playerId, segment, slot, unpackedCode);
+            removalListener.onRemoved(segment.codeHigh[slot], segment.codeLow[slot], segment.attachment[slot]);
+            transition(playerId, segment, slot, EMPTY);
+            segment.removeAt(slot);
+            return snapshot;
+        }
+    }
+
+    /**
+     * 进行一次验证尝试
+     *
+     * @param inputHigh     输入的 PackedCode 编码(高位)
+     * @param inputLow      输入的 PackedCode 编码(低位)
+     * @param unpackedMatch 输入是否与无法编码的自定义验证码相同
+     */
+    public AttemptResult attempt(UUID playerId, long inputHigh, long inputLow, boolean unpackedMatch, long now) {
+        long keyHigh = playerId.getMostSignificantBits();
+        long keyLow = playerId.getLeastSignificantBits();
+        int hash = hash(keyHigh, keyLow);
+        Segment segment = segmentFor(hash);
+
+        synchronized (segment) {
+            int slot = segment.find(keyHigh, keyLow, hash);
+            if (slot < 0) {
+                return AttemptResult.NO_SESSION;
+            }
+            if (segment.status[slot] != encode(VerificationStatus.PENDING)) {
+                return AttemptResult.NOT_PENDING;
+            }
+            if (now > segment.deadline[slot]) {
+                // 状态保持不变，由超时检查移除会话并踢出玩家
+                return AttemptResult.EXPIRED;
+            }
+
+            long high = segment.codeHigh[slot];
+            boolean matched = high == PackedCode.INVALID
+                ? unpackedMatch
+                : PackedCode.matches(high, segment.codeLow[slot], inputHigh, inputLow);
+            if (matched) {
+                transition(playerId, segment, slot, encode(VerificationStatus.SUCCESS));
+                return AttemptResult.SUCCESS;
+            }
+
+            if (++segment.attempts[slot] >= segment.maxAttempts[slot]) {
+                transition(playerId, segment, slot, encode(VerificationStatus.FAILED));
+                return AttemptResult.FAILED;
+            }
+            return AttemptResult.WRONG;
+        }
+    }
+
+    /**
+     * 修改会话状态
+     *
+     * @return 会话存在时返回 true
+     */
+    public boolean setStatus(UUID playerId, VerificationStatus status) {
+        long keyHigh = playerId.getMostSignificantBits();
+        long keyLow = playerId.getLeastSignificantBits();
+        int hash = hash(keyHigh, keyLow);
+        Segment segment = segmentFor(hash);
+
+        synchronized (segment) {
+            int slot = segment.find(keyHigh, keyLow, hash);
+            if (slot < 0) {
+                return false;
+            }
+            transition(playerId, segment, slot, encode(status));
+            return true;
+        }
+    }
+
+    /**
+     * 获取会话状态，不存在时返回 null
+     */
+    public VerificationStatus getStatus(UUID playerId) {
+        long keyHigh = playerId.getMostSignificantBits();
+        long keyLow = playerId.getLeastSignificantBits();
+        int hash = hash(keyHigh, keyLow);
+        Segment segment = segmentFor(hash);
+
+        synchronized (segment) {
+            int slot = segment.find(keyHigh, keyLow, hash);
+            return slot < 0 ? null : decode(segment.status[slot]);
+        }
+    }
+
+    /**
+     * 获取会话快照，不存在时返回 null
+     *
+     * @param unpackedCode 无法编码的验证码在快照中显示的文本
+     */
+    public PlayerVerification get(UUID playerId, String unpackedCode) {
+        long keyHigh = playerId.getMostSignificantBits();
+        long keyLow = playerId.getLeastSignificantBits();
+        int hash = hash(keyHigh, keyLow);
+        Segment segment = segmentFor(hash);
+
+        synchronized (segment) {
+            int slot = segment.find(keyHigh, keyLow, hash);
+            return slot < 0 ? null : snapshot(playerId, segment, slot, unpackedCode);
+        }
+    }
+
+    private static PlayerVerification snapshot(UUID playerId, Segment segment, int slot, String unpackedCode) {
+        long high = segment.codeHigh[slot];
+        return new PlayerVerification(
+            playerId,
+            high,
+            segment.codeLow[slot],
+            high == PackedCode.INVALID ? unpackedCode : null,
+            segment.startTime[slot],
+            segment.deadline[slot],
+            segment.attempts[slot],
+            segment.maxAttempts[slot],
+            decode(segment.status[slot])
+        );
+    }
+
+    /**
+     * 获取处于指定状态的会话数量(O(1)，不加锁)
+     */
+    public int count(VerificationStatus status) {
+        return (int) statusCounts[status.ordinal()].sum();
+    }
+
+    /**
+     * 获取会话数量
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 获取所有段的槽位总数，用于估算内存占用
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                capacity += segment.status.length;
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * 估算会话数组占用的内存(字节)
+     */
+    public long estimatedBytes() {
+        return (long) capacity() * BYTES_PER_SLOT;
+    }
+
+    /**
+     * 移除所有会话并收缩到初始容量
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int i = 0; i < segment.status.length; i++) {
+                    if (segment.status[i] != EMPTY) {
+                        removalListener.onRemoved(segment.codeHigh[i], segment.codeLow[i], segment.attachment[i]);
+                        transition(new UUID(segment.keyHigh[i], segment.keyLow[i]), segment, i, EMPTY);
+                    }
+                }
+                segment.allocate(INITIAL_CAPACITY);
+                segment.size = 0;
+            }
+        }
+    }
+}
@@ -1,8 +1,20 @@
 package cn.popcraft.verify.managers;
 
 import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.audit.AuditEvent;
+import cn.popcraft.verify.protection.AdmissionController;
+import cn.popcraft.verify.protection.IpReputation;
+import cn.popcraft.verify.storage.VerifiedPlayerStore;
+import cn.popcraft.verify.utils.MessageTemplate;
+import cn.popcraft.verify.utils.PackedCode;
+import cn.popcraft.verify.utils.TaskScheduler;
+import cn.popcraft.verify.utils.TimingWheel;
+import cn.popcraft.verify.utils.WorkQueue;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -12,15 +24,30 @@ import java.util.concurrent.ConcurrentHashMap;
  * 作者: Popcraft
  * 
  * 负责:
- * - 验证码生成
+ * - 验证码生成(随机验证码从验证码池中取出)
+ * - 登录前预先判定验证状态
  * - 验证状态管理
  * - 验证超时处理
+ * - 维护未验证玩家标记(RestrictionGate)
  */
 public class VerificationManager {
     
     private final VerifyPlugin plugin;
-    private final Map<UUID, PlayerVerification> playerVerifications;
+    private final SessionTable sessions;
+    private final Map<UUID, PreparedLogin> preparedLogins;
+    // 加入时拥有 verify.bypass 权限的玩家，登录阶段不受限流和网段信誉限制
+    private final Set<UUID> bypassPlayers = ConcurrentHashMap.newKeySet();
+    private final CodePool codePool;
     private final SecureRandom random;
+    private final TimingWheel<UUID> timeoutWheel;
+    private volatile TaskScheduler.Task timeoutTask;
+    
+    // 时间轮槽位数量，每个槽位 1 秒
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
+    
+    // 登录前判定结果的最长保留时间，玩家未能完成登录时由超时任务清理
+    private static final long PREPARED_LOGIN_TTL = 60000L;
+    private int sweepCounter;
     
     // 验证状态枚举
     public enum VerificationStatus {
@@ -31,300 +58,685 @@ public class VerificationManager {
         KICKED      // 已被踢出
     }
     
+    // 登录前判定结果枚举
+    public enum LoginDecision {
+        SKIP,       // 验证功能未启用
+        VERIFIED,   // 已有验证记录
+        CHALLENGE,  // 需要验证
+        REJECT,     // 拒绝登录(服务器繁忙)
+        BLOCKED     // 拒绝登录(网段信誉过低)
+    }
+    
+    /**
+     * 登录前判定结果，在异步登录阶段生成，玩家进入后取出
+     */
+    private static final class PreparedLogin {
+        private final LoginDecision decision;
+        private final String code;
+        private final long preparedAt;
+        private final long deadline;
+        private final int maxAttempts;
+        
+        private PreparedLogin(LoginDecision decision, String code, long deadline, int maxAttempts) {
+            this.decision = decision;
+            this.code = code;
+            this.preparedAt = System.currentTimeMillis();
+            this.deadline = deadline;
+            this.maxAttempts = maxAttempts;
+        }
+    }
+    
     /**
      * 玩家验证信息类
+     * 
+     * 会话数据保存在 SessionTable 中，这里是读取时生成的只读快照，修改状态需要通过 VerificationManager。
+     * 验证码以 PackedCode 编码保存；无法编码的自定义验证码保留原字符串。
      */
     public static class PlayerVerification {
         private final UUID playerId;
-        private final String verificationCode;
+        private final long codeHigh;
+        private final long codeLow;
+        private final String unpackedCode;
         private final long startTime;
+        private final long deadline;
+        private final int attempts;
         private final int maxAttempts;
-        private int attempts;
-        private VerificationStatus status;
-        private final List<String> pendingCommands;
+        private final VerificationStatus status;
         
-        public PlayerVerification(UUID playerId, String verificationCode, int maxAttempts) {
+        public PlayerVerification(UUID playerId, long codeHigh, long codeLow, String unpackedCode,
+                                  long startTime, long deadline, int attempts, int maxAttempts,
+                                  VerificationStatus status) {
             this.playerId = playerId;
-            this.verificationCode = verificationCode;
-            this.startTime = System.currentTimeMillis();
+            this.codeHigh = codeHigh;
+            this.codeLow = codeLow;
+            this.unpackedCode = unpackedCode;
+            this.startTime = startTime;
+            this.deadline = deadline;
+            this.attempts = attempts;
             this.maxAttempts = maxAttempts;
-            this.attempts = 0;
-            this.status = VerificationStatus.PENDING;
-            this.pendingCommands = new ArrayList<>();
+            this.status = status;
         }
         
         // Getters
         public UUID getPlayerId() { return playerId; }
-        public String getVerificationCode() { return verificationCode; }
+        public long getCodeHigh() { return codeHigh; }
+        public long getCodeLow() { return codeLow; }
         public long getStartTime() { return startTime; }
+        public long getDeadline() { return deadline; }
         public int getAttempts() { return attempts; }
         public int getMaxAttempts() { return maxAttempts; }
         public VerificationStatus getStatus() { return status; }
-        public List<String> getPendingCommands() { return pendingCommands; }
-        
-        // Methods
-        public void incrementAttempts() { this.attempts++; }
-        public void setStatus(VerificationStatus status) { this.status = status; }
-        public void addPendingCommand(String command) { this.pendingCommands.add(command); }
         
         /**
-         * 检查是否超时
-         */
-        public boolean isTimeout(ConfigManager configManager) {
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            long timeoutMs = configManager.getVerificationTimeout() * 1000L;
-            return elapsedTime > timeoutMs;
-        }
-        
-        /**
-         * 检查是否可以继续尝试
+         * 获取验证码文本(用于显示)，随机验证码统一为大写
          */
-        public boolean canRetry(ConfigManager configManager) {
-            if (isTimeout(configManager)) {
-                setStatus(VerificationStatus.TIMEOUT);
-                return false;
-            }
-            return attempts < maxAttempts;
+        public String getVerificationCode() {
+            return unpackedCode != null ? unpackedCode : PackedCode.decode(codeHigh, codeLow);
         }
         
         /**
-         * 检查验证是否通过
+         * 检查是否超时
          */
-        public boolean verifyCode(String inputCode) {
-            if (status != VerificationStatus.PENDING) {
-                return false;
-            }
-            
-            if (verificationCode.equalsIgnoreCase(inputCode.trim())) {
-                setStatus(VerificationStatus.SUCCESS);
-                return true;
-            } else {
-                incrementAttempts();
-                if (attempts >= maxAttempts) {
-                    setStatus(VerificationStatus.FAILED);
-                }
-                return false;
-            }
+        public boolean isTimeout() {
+            return System.currentTimeMillis() > deadline;
         }
         
         /**
          * 获取剩余时间(秒)
          */
-        public long getRemainingTime(ConfigManager configManager) {
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            long timeoutMs = configManager.getVerificationTimeout() * 1000L;
-            long remainingMs = timeoutMs - elapsedTime;
+        public long getRemainingTime() {
+            long remainingMs = deadline - System.currentTimeMillis();
             return Math.max(0, remainingMs / 1000);
         }
     }
     
     public VerificationManager(VerifyPlugin plugin) {
         this.plugin = plugin;
-        this.playerVerifications = new ConcurrentHashMap<>();
+        this.preparedLogins = new ConcurrentHashMap<>();
         this.random = new SecureRandom();
+        this.codePool = new CodePool(plugin, random);
+        this.sessions = new SessionTable(this::onSessionRemoved,
+            (playerId, from, to) -> plugin.getMetrics().recordTransition(from, to));
+        this.timeoutWheel = new TimingWheel<>(1000L, TIMEOUT_WHEEL_SIZE);
+    }
+    
+    /**
+     * 按配置启动或停止验证码池和超时检查任务
+     * 验证关闭后超时检查会在已有的验证全部结束后自行停止
+     */
+    public void updateServices() {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (!settings.isVerificationEnabled()) {
+            codePool.close();
+            return;
+        }
         
-        // 启动超时检查任务
+        if (settings.isCustomCode() || settings.getCodePoolSize() <= 0) {
+            codePool.close();
+        } else {
+            codePool.start();
+        }
         startTimeoutCheckTask();
     }
     
     /**
-     * 为玩家创建验证
+     * 在异步登录阶段判定玩家的验证状态(不在主线程执行)
+     * 需要验证时会预先生成验证码，玩家进入后由 attachPreparedLogin 取出
      */
-    public PlayerVerification createVerification(Player player) {
-        String verificationCode = generateVerificationCode();
-        PlayerVerification verification = new PlayerVerification(
-            player.getUniqueId(),
-            verificationCode,
-            plugin.getConfigManager().getMaxAttempts()
-        );
+    public LoginDecision prepareLogin(UUID playerId, InetAddress address) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        String ip = address == null ? null : address.getHostAddress();
         
-        playerVerifications.put(player.getUniqueId(), verification);
+        PreparedLogin prepared;
+        if (!settings.isVerificationEnabled()) {
+            // 验证关闭时不保存判定结果，超时检查可能已经停止，没有任务清理
+            discardPreparedLogin(playerId);
+            return LoginDecision.SKIP;
+        } else if (isRemembered(playerId, ip)) {
+            prepared = new PreparedLogin(LoginDecision.VERIFIED, null, 0L, 0);
+        } else if (bypassPlayers.contains(playerId) || settings.isAdmissionAllowed(playerId, address)) {
+            // 登录阶段无法检查权限: 已知的跳过验证的玩家和放行名单不经过信誉和限流
+            prepared = new PreparedLogin(LoginDecision.CHALLENGE, generateVerificationCode(settings),
+                System.currentTimeMillis() + settings.getVerificationTimeoutMillis(), settings.getMaxAttempts());
+        } else {
+            // 信誉过低的网段在限流之前拒绝，不占用令牌
+            IpReputation.Verdict verdict = plugin.getIpReputation().assess(address);
+            if (verdict == IpReputation.Verdict.BLOCKED) {
+                return LoginDecision.BLOCKED;
+            }
+            if (plugin.getAdmissionController().tryAdmit(address, getPendingSessionCount())
+                    != AdmissionController.Result.ADMITTED) {
+                // 被限流的连接不生成任何验证信息
+                return LoginDecision.REJECT;
+            }
+            String code = verdict == IpReputation.Verdict.TRUSTED
+                ? generateTrustedCode(settings) : generateVerificationCode(settings);
+            prepared = new PreparedLogin(LoginDecision.CHALLENGE, code,
+                System.currentTimeMillis() + settings.getVerificationTimeoutMillis(), settings.getMaxAttempts());
+        }
         
-        // 记录日志
-        if (plugin.getConfigManager().logVerifications()) {
-            plugin.getLogger().info("为玩家 " + player.getName() + " 创建验证，验证码: " + verificationCode);
+        discardPreparedLogin(playerId);
+        preparedLogins.put(playerId, prepared);
+        return prepared.decision;
+    }
+    
+    /**
+     * 记住拥有 verify.bypass 权限的玩家，之后的登录阶段不再限流
+     */
+    public void markBypass(UUID playerId) {
+        bypassPlayers.add(playerId);
+    }
+    
+    /**
+     * 丢弃玩家的登录前判定结果(登录被拒绝或玩家跳过验证时)
+     */
+    public void discardPreparedLogin(UUID playerId) {
+        PreparedLogin prepared = preparedLogins.remove(playerId);
+        if (prepared != null && prepared.code != null) {
+            codePool.release(prepared.code);
+        }
+    }
+    
+    /**
+     * 玩家进入服务器时取出登录前的判定结果
+     * 需要验证时会用预先生成的验证码创建玩家当前的验证
+     */
+    public LoginDecision attachPreparedLogin(Player player) {
+        PreparedLogin prepared = preparedLogins.remove(player.getUniqueId());
+        if (prepared == null) {
+            // 没有经过登录前阶段(例如插件在玩家登录过程中被加载，或判定结果已过期)，在此处补做判定
+            prepared = prepareJoined(player);
+            if (prepared == null) {
+                return LoginDecision.SKIP;
+            }
         }
         
-        return verification;
+        if (prepared.decision == LoginDecision.CHALLENGE) {
+            installVerification(player, prepared.code, prepared.preparedAt, prepared.deadline, prepared.maxAttempts);
+        }
+        
+        return prepared.decision;
+    }
+    
+    /**
+     * 为已进入服务器的玩家补做判定，验证关闭时返回 null
+     * 玩家已经连接，不再经过网段信誉和限流，需要验证时总是生成验证码
+     */
+    private PreparedLogin prepareJoined(Player player) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (!settings.isVerificationEnabled()) {
+            return null;
+        }
+        String ip = player.getAddress() == null ? null : player.getAddress().getAddress().getHostAddress();
+        if (isRemembered(player.getUniqueId(), ip)) {
+            return new PreparedLogin(LoginDecision.VERIFIED, null, 0L, 0);
+        }
+        return new PreparedLogin(LoginDecision.CHALLENGE, generateVerificationCode(settings),
+            System.currentTimeMillis() + settings.getVerificationTimeoutMillis(), settings.getMaxAttempts());
+    }
+    
+    /**
+     * 为玩家创建验证
+     */
+    public PlayerVerification createVerification(Player player) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        long now = System.currentTimeMillis();
+        installVerification(player, generateVerificationCode(settings), now,
+            now + settings.getVerificationTimeoutMillis(), settings.getMaxAttempts());
+        return getVerification(player);
+    }
+    
+    /**
+     * 设置玩家当前的验证信息，并在时间轮中登记截止时间
+     * 
+     * 超时任务附加在会话上，会话被替换或移除时从时间轮中取消(O(1))
+     */
+    private void installVerification(Player player, String code, long startTime, long deadline, int maxAttempts) {
+        TimingWheel.Timeout<UUID> timeout = timeoutWheel.schedule(player.getUniqueId(), deadline);
+        sessions.put(player.getUniqueId(), code, startTime, deadline, maxAttempts, timeout);
+        // 验证刚被关闭时超时检查可能已经停止
+        startTimeoutCheckTask();
+        plugin.getRestrictionGate().restrict(player);
+        
+        // 记录日志
+        plugin.getMetrics().recordSessionCreated();
+        plugin.getAuditLog().record(AuditEvent.SESSION_CREATED, player, code);
+    }
+    
+    /**
+     * 会话被移除或替换时释放验证码并取消超时任务(在会话表的段锁内调用)
+     * 到期移除时超时任务已从时间轮中取出，取消不做任何处理
+     */
+    @SuppressWarnings("unchecked")
+    private void onSessionRemoved(long codeHigh, long codeLow, Object attachment) {
+        codePool.release(codeHigh, codeLow);
+        timeoutWheel.cancel((TimingWheel.Timeout<UUID>) attachment);
     }
     
     /**
      * 获取玩家的验证信息
      */
     public PlayerVerification getVerification(Player player) {
-        return playerVerifications.get(player.getUniqueId());
+        return getVerification(player.getUniqueId());
     }
     
     /**
      * 获取玩家的验证信息(通过UUID)
      */
     public PlayerVerification getVerification(UUID playerId) {
-        return playerVerifications.get(playerId);
+        return sessions.get(playerId, plugin.getConfigManager().getSettings().getCustomVerificationCode());
     }
     
     /**
-     * 验证验证码
+     * 验证验证码(主线程)，次数用完时踢出玩家
      */
     public boolean verifyCode(Player player, String inputCode) {
-        PlayerVerification verification = getVerification(player);
-        if (verification == null) {
-            return false;
+        SessionTable.AttemptResult result = attemptCode(player, inputCode);
+        if (result == SessionTable.AttemptResult.FAILED) {
+            kickPlayerForFailedVerification(player);
         }
+        return result == SessionTable.AttemptResult.SUCCESS;
+    }
+    
+    /**
+     * 进行一次验证尝试，可在任意线程调用
+     * 
+     * 只操作会话表、指标、审计日志、验证记录和未验证玩家标记，这些都是线程安全的；
+     * 次数用完时只把状态改为 FAILED，由调用方在主线程踢出玩家
+     */
+    public SessionTable.AttemptResult attemptCode(Player player, String inputCode) {
+        // 在输入的原字符串上编码和比较，不创建去掉空白后的副本
+        int start = PackedCode.trimStart(inputCode);
+        int end = PackedCode.trimEnd(inputCode, start);
+        String customCode = plugin.getConfigManager().getSettings().getCustomVerificationCode();
+        boolean customMatch = end - start == customCode.length()
+            && customCode.regionMatches(true, 0, inputCode, start, end - start);
         
-        // 检查是否超时或已失败
-        if (!verification.canRetry(plugin.getConfigManager())) {
-            return false;
-        }
+        SessionTable.AttemptResult result = sessions.attempt(player.getUniqueId(),
+            PackedCode.packHigh(inputCode, start, end), PackedCode.packLow(inputCode, start, end),
+            customMatch, System.currentTimeMillis());
         
-        boolean result = verification.verifyCode(inputCode);
+        switch (result) {
+            case SUCCESS: {
+                PlayerVerification verification = getVerification(player);
+                if (verification != null) {
+                    plugin.getMetrics().recordSuccess(System.currentTimeMillis() - verification.getStartTime(),
+                        verification.getAttempts() + 1);
+                }
+                plugin.getAuditLog().record(AuditEvent.VERIFY_SUCCESS, player, null);
+                plugin.getRestrictionGate().release(player);
+                
+                // 记录验证结果
+                rememberVerification(player);
+                plugin.getIpReputation().recordSuccess(getPlayerAddress(player));
+                return result;
+            }
+            case WRONG:
+            case FAILED: {
+                PlayerVerification verification = getVerification(player);
+                plugin.getMetrics().recordFailure();
+                if (result == SessionTable.AttemptResult.FAILED) {
+                    plugin.getIpReputation().recordFailure(getPlayerAddress(player));
+                }
+                plugin.getAuditLog().record(AuditEvent.VERIFY_FAILED, player, verification == null ? null
+                    : verification.getAttempts() + "/" + verification.getMaxAttempts());
+                return result;
+            }
+            default:
+                // 没有验证、已超时或已结束
+                return result;
+        }
+    }
+    
+    /**
+     * 处理待验证玩家在聊天框中输入的内容(异步聊天线程)
+     * 
+     * 验证尝试直接在聊天线程中完成，不占用主线程；只有验证成功后的处理(规则书、奖励)
+     * 和次数用完后的踢出转到玩家所在的线程执行。长度与验证码不同的内容不计入尝试次数。
+     */
+    public void verifyFromChat(Player player, String message) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        int start = PackedCode.trimStart(message);
+        int end = PackedCode.trimEnd(message, start);
+        // 信誉良好的地址使用较短的验证码，按玩家当前的验证码判断长度
+        PlayerVerification current = getVerification(player);
+        int expectedLength = current != null ? current.getVerificationCode().length()
+            : settings.isCustomCode() ? settings.getCustomVerificationCode().length() : settings.getRandomCodeLength();
+        if (end - start != expectedLength) {
+            player.sendMessage(settings.getRestrictionMessage());
+            return;
+        }
         
-        // 记录验证结果
-        if (plugin.getConfigManager().logVerifications()) {
-            plugin.getLogger().info("玩家 " + player.getName() + 
-                (result ? " 验证成功" : " 验证失败 (尝试 " + verification.getAttempts() + "/" + verification.getMaxAttempts() + ")"));
+        switch (attemptCode(player, message)) {
+            case SUCCESS:
+                plugin.getWorkQueue().submit(WorkQueue.Priority.NORMAL, player, () -> completeVerification(player));
+                break;
+                
+            case WRONG: {
+                PlayerVerification verification = getVerification(player);
+                plugin.getBookManager().sendVerificationFailedMessage(player,
+                    verification == null ? 0 : verification.getMaxAttempts() - verification.getAttempts());
+                break;
+            }
+                
+            case FAILED:
+                player.sendMessage("§c❌ 验证失败次数过多，您将被踢出服务器！");
+                plugin.getWorkQueue().submit(WorkQueue.Priority.HIGH, player, () -> kickPlayerForFailedVerification(player));
+                break;
+                
+            default:
+                // 已超时或已结束，由超时任务或踢出流程处理
+                break;
         }
+    }
+    
+    /**
+     * 验证成功后的处理(玩家所在的线程): 发送消息、移除验证信息、展示规则书和发放奖励
+     */
+    public void completeVerification(Player player) {
+        // 发送成功消息
+        plugin.getBookManager().sendVerificationSuccessMessage(player);
         
-        // 如果验证成功，执行待执行命令
-        if (result) {
-            executePendingCommands(player, verification);
+        // 清理验证记录
+        removeVerification(player);
+        
+        // 显示规则书（如果启用）
+        if (plugin.getConfigManager().isBookEnabled()) {
+            plugin.getWorkQueue().submitLater(WorkQueue.Priority.LOW, player, () -> {
+                plugin.getBookManager().showRuleBook(player);
+            }, 20L);
         }
         
-        // 如果验证失败且次数已满，踢出玩家
-        if (!result && verification.getStatus() == VerificationStatus.FAILED) {
-            kickPlayerForFailedVerification(player);
+        // 给予奖励（如果配置）
+        if (plugin.getConfigManager().giveRewards()) {
+            giveRewards(player);
         }
         
-        return result;
+        player.sendMessage("§a✅ 验证成功！欢迎来到服务器！");
+    }
+    
+    /**
+     * 给予奖励，控制台命令经任务队列在全局线程上执行
+     */
+    private void giveRewards(Player player) {
+        List<String> rewardCommands = plugin.getConfigManager().getRewardCommands();
+        String playerName = player.getName();
+        
+        plugin.getWorkQueue().submitGlobal(WorkQueue.Priority.NORMAL, () -> {
+            for (String command : rewardCommands) {
+                String processedCommand = command.replace("{player}", playerName);
+                try {
+                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), processedCommand);
+                } catch (Exception e) {
+                    plugin.getLogger().warning("执行奖励命令失败: " + processedCommand + " - " + e.getMessage());
+                }
+            }
+        });
+        
+        plugin.getAuditLog().record(AuditEvent.REWARD_GIVEN, player, null);
     }
     
     /**
      * 移除玩家的验证信息
      */
     public void removeVerification(Player player) {
-        playerVerifications.remove(player.getUniqueId());
+        plugin.getRestrictionGate().release(player);
+        removeVerification(player.getUniqueId());
     }
     
     /**
-     * 移除玩家的验证信息(通过UUID)
+     * 移除玩家的验证信息(通过UUID)，验证码随之释放
      */
     public void removeVerification(UUID playerId) {
-        playerVerifications.remove(playerId);
+        sessions.remove(playerId);
     }
     
     /**
      * 检查玩家是否已验证
      */
     public boolean isVerified(Player player) {
-        PlayerVerification verification = getVerification(player);
-        return verification != null && verification.getStatus() == VerificationStatus.SUCCESS;
+        return sessions.getStatus(player.getUniqueId()) == VerificationStatus.SUCCESS;
     }
     
     /**
-     * 生成验证码
+     * 检查玩家是否有有效的历史验证记录
+     */
+    public boolean isRemembered(Player player) {
+        return isRemembered(player.getUniqueId(), getPlayerIp(player));
+    }
+    
+    /**
+     * 检查玩家是否有有效的历史验证记录(通过UUID和IP)
      */
-    private String generateVerificationCode() {
-        ConfigManager configManager = plugin.getConfigManager();
-        String type = configManager.getVerificationType();
+    public boolean isRemembered(UUID playerId, String ip) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (!settings.isRememberVerifiedEnabled()) {
+            return false;
+        }
         
-        if ("CUSTOM".equalsIgnoreCase(type)) {
-            return configManager.getCustomVerificationCode();
+        if (settings.isRememberRequireSameIp() && ip == null) {
+            return false;
+        }
+        
+        String requiredIp = settings.isRememberRequireSameIp() ? ip : null;
+        return plugin.getVerifiedPlayerStore().isVerified(playerId, settings.getRememberExpireMillis(), requiredIp);
+    }
+    
+    /**
+     * 记录玩家的验证结果
+     */
+    private void rememberVerification(Player player) {
+        if (plugin.getConfigManager().getSettings().isRememberVerifiedEnabled()) {
+            VerifiedPlayerStore.VerifiedEntry entry =
+                plugin.getVerifiedPlayerStore().markVerified(player.getUniqueId(), getPlayerIp(player));
+            plugin.getNetworkSync().announceVerified(player.getUniqueId(), entry.getVerifiedAt(), entry.getLastIp());
+        }
+    }
+    
+    /**
+     * 撤销玩家的验证记录，并通知网络中的其他服务器
+     *
+     * @return 本地是否存在该玩家的验证记录
+     */
+    public boolean revokeVerification(UUID playerId) {
+        // 不查询记录: 主线程上索引可能尚未加载完成
+        boolean existed = plugin.getVerifiedPlayerStore().revoke(playerId);
+        plugin.getNetworkSync().announceInvalidated(playerId);
+        return existed;
+    }
+    
+    /**
+     * 获取玩家的 IP 地址
+     */
+    private String getPlayerIp(Player player) {
+        InetAddress address = getPlayerAddress(player);
+        return address == null ? null : address.getHostAddress();
+    }
+    
+    /**
+     * 获取玩家的连接地址
+     */
+    private InetAddress getPlayerAddress(Player player) {
+        InetSocketAddress address = player.getAddress();
+        return address == null ? null : address.getAddress();
+    }
+    
+    /**
+     * 生成验证码
+     */
+    private String generateVerificationCode(VerifySettings settings) {
+        if (settings.isCustomCode()) {
+            return settings.getCustomVerificationCode();
         } else {
-            // 随机生成验证码
-            StringBuilder code = new StringBuilder();
-            String characters = configManager.getVerificationCharacters();
-            int length = configManager.getRandomCodeLength();
-            
-            for (int i = 0; i < length; i++) {
-                int index = random.nextInt(characters.length());
-                code.append(characters.charAt(index));
-            }
-            
-            return code.toString();
+            // 从验证码池中取出随机验证码
+            return codePool.take(settings);
         }
     }
     
     /**
-     * 执行待执行命令
+     * 为信誉良好的地址生成较短的验证码
+     * 
+     * 这类连接很少，直接生成而不经过验证码池；比较时按玩家各自的会话进行，与池中的验证码重复也没有影响
      */
-    private void executePendingCommands(Player player, PlayerVerification verification) {
-        if (!verification.getPendingCommands().isEmpty()) {
-            for (String command : verification.getPendingCommands()) {
-                String processedCommand = command.replace("{player}", player.getName());
-                plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(), processedCommand);
-            }
+    private String generateTrustedCode(VerifySettings settings) {
+        int length = settings.getReputationTrustedCodeLength();
+        if (settings.isCustomCode() || length <= 0 || length >= settings.getRandomCodeLength()) {
+            return generateVerificationCode(settings);
+        }
+        return generateRandomCode(random, settings.getVerificationCharacters(), length);
+    }
+    
+    /**
+     * 从字符集中随机生成指定长度的验证码
+     */
+    public static String generateRandomCode(Random random, String characters, int length) {
+        StringBuilder code = new StringBuilder(length);
+        
+        for (int i = 0; i < length; i++) {
+            int index = random.nextInt(characters.length());
+            code.append(characters.charAt(index));
         }
+        
+        return code.toString();
     }
     
     /**
      * 踢出验证失败的玩家
      */
     private void kickPlayerForFailedVerification(Player player) {
-        ConfigManager configManager = plugin.getConfigManager();
-        String kickMessage = configManager.getKickMessage();
+        String kickMessage = plugin.getConfigManager().getSettings().getKickMessage();
         
         // 设置验证状态为已踢出
-        PlayerVerification verification = getVerification(player);
-        if (verification != null) {
-            verification.setStatus(VerificationStatus.KICKED);
-        }
+        sessions.setStatus(player.getUniqueId(), VerificationStatus.KICKED);
         
+        plugin.getMetrics().recordKick();
         player.kickPlayer(kickMessage);
     }
     
     /**
-     * 启动超时检查任务
+     * 启动超时检查任务(全局线程)，已启动时不做处理
      */
-    private void startTimeoutCheckTask() {
-        plugin.getServer().getScheduler().runTaskTimer(plugin, () -> {
-            Iterator<Map.Entry<UUID, PlayerVerification>> iterator = playerVerifications.entrySet().iterator();
+    private synchronized void startTimeoutCheckTask() {
+        if (timeoutTask != null) {
+            return;
+        }
+        timeoutTask = plugin.getTaskScheduler().runGlobalTimer(() -> {
+            long start = System.nanoTime();
+            timeoutWheel.advance(System.currentTimeMillis(), this::handleTimeout);
+            
+            // 每 30 秒清理一次未完成登录的判定结果
+            if (++sweepCounter >= 30) {
+                sweepCounter = 0;
+                purgePreparedLogins();
+                plugin.getAdmissionController().purgeIdleBuckets();
+            }
             
-            while (iterator.hasNext()) {
-                Map.Entry<UUID, PlayerVerification> entry = iterator.next();
-                PlayerVerification verification = entry.getValue();
+            plugin.getMetrics().recordSweep(System.nanoTime() - start);
+            
+            // 验证已关闭且没有进行中的验证时停止
+            if (!plugin.getConfigManager().getSettings().isVerificationEnabled()
+                    && sessions.size() == 0 && preparedLogins.isEmpty()) {
+                stopTimeoutCheckTask();
+            }
+        }, 20L, 20L); // 每秒推进一次时间轮
+    }
+    
+    private synchronized void stopTimeoutCheckTask() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel();
+            timeoutTask = null;
+        }
+    }
+    
+    /**
+     * 清理过期的登录前判定结果
+     */
+    private void purgePreparedLogins() {
+        long expireBefore = System.currentTimeMillis() - PREPARED_LOGIN_TTL;
+        for (Map.Entry<UUID, PreparedLogin> entry : preparedLogins.entrySet()) {
+            if (entry.getValue().preparedAt < expireBefore) {
+                discardPreparedLogin(entry.getKey());
+            }
+        }
+    }
+    
+    /**
+     * 处理到期的验证
+     */
+    private void handleTimeout(UUID playerId) {
+        // 会话已被移除，或已被截止时间更晚的新会话替换
+        PlayerVerification verification = sessions.removeExpired(playerId, System.currentTimeMillis(),
+            plugin.getConfigManager().getSettings().getCustomVerificationCode());
+        if (verification == null) {
+            return;
+        }
+        
+        // 已验证成功的会话只是尚未清理；其余状态(包括次数用完后尚未踢出的)都要踢出
+        Player player = plugin.getServer().getPlayer(playerId);
+        if (player != null && player.isOnline() && verification.getStatus() != VerificationStatus.SUCCESS) {
+            if (verification.getStatus() == VerificationStatus.PENDING) {
+                plugin.getMetrics().recordTimeout();
+                plugin.getIpReputation().recordFailure(getPlayerAddress(player));
+                plugin.getAuditLog().record(AuditEvent.VERIFY_TIMEOUT, player, null);
                 
-                if (verification.isTimeout(plugin.getConfigManager())) {
-                    Player player = plugin.getServer().getPlayer(verification.getPlayerId());
-                    if (player != null && player.isOnline()) {
-                        verification.setStatus(VerificationStatus.TIMEOUT);
-                        
-                        // 显示超时消息
-                        List<String> timeoutMessages = plugin.getConfigManager().getTimeoutMessages();
-                        for (String message : timeoutMessages) {
-                            player.sendMessage(message);
-                        }
-                        
-                        // 踢出玩家
-                        kickPlayerForFailedVerification(player);
-                    }
-                    
-                    iterator.remove();
+                // 显示超时消息
+                String playerName = player.getName();
+                String code = verification.getVerificationCode();
+                for (MessageTemplate template : plugin.getConfigManager().getSettings().getTimeoutTemplates()) {
+                    player.sendMessage(template.render(code, playerName, 0));
                 }
             }
-        }, 20L, 20L); // 每秒检查一次
+            
+            // 踢出玩家(优先于界面和规则书执行，Folia 上在玩家所在的区域线程执行)
+            plugin.getWorkQueue().submit(WorkQueue.Priority.HIGH, player, () -> kickPlayerForFailedVerification(player));
+        }
     }
     
     /**
      * 清理资源
      */
     public void cleanup() {
-        playerVerifications.clear();
+        stopTimeoutCheckTask();
+        for (UUID playerId : preparedLogins.keySet()) {
+            discardPreparedLogin(playerId);
+        }
+        sessions.clear();
+        plugin.getRestrictionGate().clear();
+        codePool.close();
     }
     
     /**
-     * 获取所有验证中的玩家数量
+     * 获取会话表
+     */
+    public SessionTable getSessionTable() {
+        return sessions;
+    }
+    
+    /**
+     * 获取验证码池
+     */
+    public CodePool getCodePool() {
+        return codePool;
+    }
+    
+    /**
+     * 获取所有验证中的玩家数量(O(1)，由状态计数器维护)
      */
     public int getPendingVerificationsCount() {
-        return (int) playerVerifications.values().stream()
-                .filter(v -> v.getStatus() == VerificationStatus.PENDING)
-                .count();
+        return sessions.count(VerificationStatus.PENDING);
+    }
+    
+    /**
+     * 获取已分配的验证会话数量(包括尚未进入服务器的连接)，用于准入控制
+     */
+    public int getPendingSessionCount() {
+        return sessions.size() + preparedLogins.size();
     }
     
     /**
-     * 获取已验证玩家数量
+     * 获取已验证玩家数量(O(1)，由状态计数器维护)
      */
     public int getVerifiedPlayers() {
-        return (int) playerVerifications.values().stream()
-            .filter(v -> v.getStatus() == VerificationStatus.SUCCESS)
-            .count();
+        return sessions.count(VerificationStatus.SUCCESS);
     }
 }
\ No newline at end of file
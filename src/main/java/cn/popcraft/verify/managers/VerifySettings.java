@@ -0,0 +1,384 @@
+package cn.popcraft.verify.managers;
+
+import cn.popcraft.verify.utils.MessageTemplate;
+import cn.popcraft.verify.utils.PackedCode;
+import net.md_5.bungee.api.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 配置快照
+ * 作者: Popcraft
+ *
+ * 由 ConfigManager 在加载配置时一次性编译生成，之后不再改变。
+ * 所有值都已转换为对应的类型，消息中的颜色代码也已预先转换，
+ * 重载时整体替换快照，读取方不会看到加载了一半的配置。
+ *
+ * 除整体版本外，每个配置节还有自己的版本，只在该节内容变化时更新，
+ * 缓存按所依赖的节的版本判断是否需要重建。
+ */
+public final class VerifySettings {
+
+    private static final ConfigSection[] SECTIONS = ConfigSection.values();
+
+    private final int version;
+    private final int[] sectionVersions;
+
+    // 验证设置
+    private final boolean verificationEnabled;
+    private final boolean customCode;
+    private final String customVerificationCode;
+    private final int randomCodeLength;
+    private final String verificationCharacters;
+    private final int codePoolSize;
+    private final int verificationTimeout;
+    private final long verificationTimeoutMillis;
+    private final int maxAttempts;
+    private final boolean chatInputEnabled;
+    private final String kickMessage;
+    private final boolean rememberVerifiedEnabled;
+    private final long rememberExpireMillis;
+    private final boolean rememberRequireSameIp;
+
+    // 登录限流设置
+    private final boolean admissionEnabled;
+    private final double admissionGlobalRate;
+    private final int admissionGlobalBurst;
+    private final double admissionSubnetRate;
+    private final int admissionSubnetBurst;
+    private final int admissionMaxPending;
+    private final String admissionBusyMessage;
+    private final Set<UUID> admissionAllowedPlayers;
+    private final Set<InetAddress> admissionAllowedAddresses;
+
+    // 网段信誉设置
+    private final boolean reputationEnabled;
+    private final double reputationDecayRate;
+    private final double reputationBlockScore;
+    private final double reputationTrustedSuccesses;
+    private final int reputationTrustedCodeLength;
+    private final int reputationMaxEntries;
+    private final String reputationBlockMessage;
+
+    // 未验证玩家限制设置
+    private final boolean restrictionEnabled;
+    private final Set<String> restrictionAllowedCommands;
+    private final String restrictionMessage;
+
+    // 规则书设置
+    private final boolean bookEnabled;
+    private final boolean bookAutoOpen;
+    private final boolean guiBook;
+    private final String bookTitle;
+    private final String bookAuthor;
+    private final List<String> bookPages;
+
+    // 消息设置
+    private final List<String> joinMessages;
+    private final List<String> successMessages;
+    private final List<String> failedMessages;
+    private final List<String> timeoutMessages;
+    private final List<MessageTemplate> joinTemplates;
+    private final List<MessageTemplate> successTemplates;
+    private final List<MessageTemplate> failedTemplates;
+    private final List<MessageTemplate> timeoutTemplates;
+
+    // 其他设置
+    private final boolean giveRewards;
+    private final List<String> rewardCommands;
+    private final boolean logVerifications;
+    private final boolean debugEnabled;
+    private final boolean autoReload;
+
+    // 审计日志设置
+    private final boolean auditFileEnabled;
+    private final int auditConsoleRate;
+    private final long auditMaxFileSize;
+    private final int auditBufferSize;
+
+    // 主线程任务队列设置
+    private final int workQueueTickBudgetMicros;
+
+    // 跨服同步设置
+    private final boolean networkEnabled;
+    private final String networkChannel;
+    private final String networkSecret;
+
+    // 指标导出设置
+    private final boolean metricsFileEnabled;
+    private final int metricsFileInterval;
+    private final boolean metricsHttpEnabled;
+    private final int metricsHttpPort;
+
+    private VerifySettings(FileConfiguration config, int version, VerifySettings previous, Set<ConfigSection> changed) {
+        this.version = version;
+        this.sectionVersions = new int[SECTIONS.length];
+        for (ConfigSection section : SECTIONS) {
+            sectionVersions[section.ordinal()] = previous == null || changed.contains(section)
+                ? version : previous.sectionVersions[section.ordinal()];
+        }
+
+        this.verificationEnabled = config.getBoolean("verification.enabled", true);
+        this.customCode = "CUSTOM".equalsIgnoreCase(config.getString("verification.type", "RANDOM"));
+        this.customVerificationCode = config.getString("verification.custom-code", "WELCOME2024");
+        this.randomCodeLength = Math.max(1, Math.min(PackedCode.MAX_LENGTH, config.getInt("verification.random-length", 6)));
+        String characters = encodableCharacters(config.getString("verification.characters", "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"));
+        this.verificationCharacters = characters.isEmpty() ? "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789" : characters;
+        this.codePoolSize = Math.max(0, config.getInt("verification.code-pool-size", 256));
+        this.verificationTimeout = config.getInt("verification.timeout", 300);
+        this.verificationTimeoutMillis = verificationTimeout * 1000L;
+        this.maxAttempts = config.getInt("verification.max-attempts", 3);
+        this.chatInputEnabled = config.getBoolean("verification.chat-input", true);
+        this.kickMessage = color(config.getString("verification.kick-message", "§c验证码验证失败！"));
+        this.rememberVerifiedEnabled = config.getBoolean("verification.remember.enabled", true);
+        this.rememberExpireMillis = config.getInt("verification.remember.expire-days", 30) * 86400000L;
+        this.rememberRequireSameIp = config.getBoolean("verification.remember.require-same-ip", false);
+
+        this.admissionEnabled = config.getBoolean("admission.enabled", true);
+        this.admissionGlobalRate = Math.max(0.1D, config.getDouble("admission.global-rate", 20D));
+        this.admissionGlobalBurst = Math.max(1, config.getInt("admission.global-burst", 50));
+        this.admissionSubnetRate = Math.max(0.01D, config.getDouble("admission.subnet-rate", 1D));
+        this.admissionSubnetBurst = Math.max(1, config.getInt("admission.subnet-burst", 5));
+        this.admissionMaxPending = Math.max(0, config.getInt("admission.max-pending", 200));
+        this.admissionBusyMessage = color(config.getString("admission.busy-message", "§c服务器繁忙，请稍后重试！"));
+        Set<UUID> allowedPlayers = new HashSet<>();
+        Set<InetAddress> allowedAddresses = new HashSet<>();
+        for (String entry : config.getStringList("admission.allowlist")) {
+            parseAllowlistEntry(entry.trim(), allowedPlayers, allowedAddresses);
+        }
+        this.admissionAllowedPlayers = Collections.unmodifiableSet(allowedPlayers);
+        this.admissionAllowedAddresses = Collections.unmodifiableSet(allowedAddresses);
+
+        this.reputationEnabled = config.getBoolean("reputation.enabled", true);
+        // 每毫秒的衰减率 = ln2 / 半衰期
+        this.reputationDecayRate = Math.log(2D) / (Math.max(1, config.getInt("reputation.half-life", 600)) * 1000D);
+        this.reputationBlockScore = Math.max(1D, config.getDouble("reputation.block-score", 20D));
+        this.reputationTrustedSuccesses = Math.max(1D, config.getDouble("reputation.trusted-successes", 3D));
+        this.reputationTrustedCodeLength = Math.max(0, Math.min(PackedCode.MAX_LENGTH,
+            config.getInt("reputation.trusted-code-length", 4)));
+        this.reputationMaxEntries = Math.max(1024, config.getInt("reputation.max-entries", 100000));
+        this.reputationBlockMessage = color(config.getString("reputation.block-message", "§c您所在的网络近期验证失败过多，请稍后再试！"));
+
+        this.restrictionEnabled = config.getBoolean("restriction.enabled", true);
+        Set<String> allowedCommands = new HashSet<>();
+        for (String command : config.getStringList("restriction.allowed-commands")) {
+            allowedCommands.add(command.toLowerCase(Locale.ROOT));
+        }
+        // 验证命令本身总是允许
+        allowedCommands.add("verify");
+        allowedCommands.add("vfy");
+        this.restrictionAllowedCommands = Collections.unmodifiableSet(allowedCommands);
+        this.restrictionMessage = color(config.getString("restriction.message", "§c请先完成验证！在聊天框直接输入验证码或使用 §e/verify <验证码>"));
+
+        this.bookEnabled = config.getBoolean("book.enabled", true);
+        this.bookAutoOpen = config.getBoolean("book.auto-open", true);
+        this.guiBook = config.getBoolean("book.use-gui", true);
+        this.bookTitle = config.getString("book.title", "§l服务器规则");
+        this.bookAuthor = config.getString("book.author", "§6管理员");
+        this.bookPages = Collections.unmodifiableList(new ArrayList<>(config.getStringList("book.pages")));
+
+        this.joinMessages = colorList(config.getStringList("messages.join-message"));
+        this.successMessages = colorList(config.getStringList("messages.success-message"));
+        this.failedMessages = colorList(config.getStringList("messages.failed-message"));
+        this.timeoutMessages = colorList(config.getStringList("messages.timeout-message"));
+        this.joinTemplates = compileTemplates(joinMessages);
+        this.successTemplates = compileTemplates(successMessages);
+        this.failedTemplates = compileTemplates(failedMessages);
+        this.timeoutTemplates = compileTemplates(timeoutMessages);
+
+        this.giveRewards = config.getBoolean("settings.give-rewards", false);
+        this.rewardCommands = Collections.unmodifiableList(new ArrayList<>(config.getStringList("settings.reward-commands")));
+        this.logVerifications = config.getBoolean("settings.log-verifications", true);
+        this.debugEnabled = config.getBoolean("settings.debug", false);
+        this.autoReload = config.getBoolean("settings.auto-reload", true);
+
+        this.auditFileEnabled = config.getBoolean("audit.enabled", true);
+        this.auditConsoleRate = Math.max(0, config.getInt("audit.console-max-per-second", 20));
+        this.auditMaxFileSize = Math.max(1, config.getInt("audit.max-file-size", 10)) * 1024L * 1024L;
+        this.auditBufferSize = Math.max(64, config.getInt("audit.buffer-size", 8192));
+
+        this.workQueueTickBudgetMicros = Math.max(1, config.getInt("work-queue.tick-budget", 2000));
+
+        this.networkEnabled = config.getBoolean("network.enabled", false);
+        String channel = config.getString("network.channel", "VerifySync");
+        this.networkChannel = channel == null || channel.isEmpty() ? "VerifySync" : channel;
+        String secret = config.getString("network.secret", "");
+        this.networkSecret = secret == null ? "" : secret;
+
+        this.metricsFileEnabled = config.getBoolean("metrics.file.enabled", true);
+        this.metricsFileInterval = Math.max(1, config.getInt("metrics.file.interval", 15));
+        this.metricsHttpEnabled = config.getBoolean("metrics.http.enabled", false);
+        this.metricsHttpPort = config.getInt("metrics.http.port", 9225);
+    }
+
+    /**
+     * 解析放行名单中的一项: UUID 或 IP 地址(只接受字面量，不做域名解析)
+     */
+    private static void parseAllowlistEntry(String entry, Set<UUID> players, Set<InetAddress> addresses) {
+        if (entry.isEmpty()) {
+            return;
+        }
+        try {
+            players.add(UUID.fromString(entry));
+            return;
+        } catch (IllegalArgumentException ignored) {
+            // 不是 UUID，按 IP 地址解析
+        }
+        if (entry.indexOf(':') >= 0 || entry.matches("[0-9.]+")) {
+            try {
+                addresses.add(InetAddress.getByName(entry));
+            } catch (UnknownHostException ignored) {
+                // 无效的地址直接忽略
+            }
+        }
+    }
+
+    /**
+     * 从配置文件编译快照
+     *
+     * @param previous 上一个快照，未变化的节沿用其版本；为 null 时所有节都使用新版本
+     * @param changed  内容发生变化的节
+     */
+    static VerifySettings compile(FileConfiguration config, int version, VerifySettings previous,
+                                  Set<ConfigSection> changed) {
+        return new VerifySettings(config, version, previous, changed);
+    }
+
+    /**
+     * 只保留可以编码的字符(可打印 ASCII)，大小写不同的同一字母只保留一个
+     */
+    private static String encodableCharacters(String characters) {
+        StringBuilder result = new StringBuilder(characters.length());
+        for (int i = 0; i < characters.length(); i++) {
+            char c = Character.toUpperCase(characters.charAt(i));
+            if (PackedCode.isEncodable(c) && result.indexOf(String.valueOf(c)) < 0) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String color(String text) {
+        return ChatColor.translateAlternateColorCodes('&', text);
+    }
+
+    private static List<String> colorList(List<String> lines) {
+        List<String> result = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            result.add(color(line));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * 编译消息模板，{timeout} 在快照内不会变化，直接替换为固定文本
+     */
+    private List<MessageTemplate> compileTemplates(List<String> lines) {
+        String timeout = String.valueOf(verificationTimeout);
+        List<String> resolved = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            resolved.add(line.replace("{timeout}", timeout));
+        }
+        return MessageTemplate.compileAll(resolved);
+    }
+
+    /**
+     * 配置版本号，每次加载递增，用于让缓存失效
+     */
+    public int getVersion() { return version; }
+
+    /**
+     * 配置节的版本号，只在该节内容变化时更新
+     */
+    public int getVersion(ConfigSection section) { return sectionVersions[section.ordinal()]; }
+
+    public boolean isVerificationEnabled() { return verificationEnabled; }
+    public boolean isCustomCode() { return customCode; }
+    public String getCustomVerificationCode() { return customVerificationCode; }
+    public int getRandomCodeLength() { return randomCodeLength; }
+    public String getVerificationCharacters() { return verificationCharacters; }
+    public int getCodePoolSize() { return codePoolSize; }
+    public int getVerificationTimeout() { return verificationTimeout; }
+    public long getVerificationTimeoutMillis() { return verificationTimeoutMillis; }
+    public int getMaxAttempts() { return maxAttempts; }
+    public boolean isChatInputEnabled() { return chatInputEnabled; }
+    public String getKickMessage() { return kickMessage; }
+    public boolean isRememberVerifiedEnabled() { return rememberVerifiedEnabled; }
+    public long getRememberExpireMillis() { return rememberExpireMillis; }
+    public boolean isRememberRequireSameIp() { return rememberRequireSameIp; }
+
+    public boolean isAdmissionEnabled() { return admissionEnabled; }
+    public double getAdmissionGlobalRate() { return admissionGlobalRate; }
+    public int getAdmissionGlobalBurst() { return admissionGlobalBurst; }
+    public double getAdmissionSubnetRate() { return admissionSubnetRate; }
+    public int getAdmissionSubnetBurst() { return admissionSubnetBurst; }
+    public int getAdmissionMaxPending() { return admissionMaxPending; }
+    public String getAdmissionBusyMessage() { return admissionBusyMessage; }
+
+    /**
+     * 玩家或连接地址是否在放行名单中(不受登录限流和网段信誉限制)
+     */
+    public boolean isAdmissionAllowed(UUID playerId, InetAddress address) {
+        return admissionAllowedPlayers.contains(playerId)
+            || (address != null && admissionAllowedAddresses.contains(address));
+    }
+
+    public boolean isReputationEnabled() { return reputationEnabled; }
+    public double getReputationDecayRate() { return reputationDecayRate; }
+    public double getReputationBlockScore() { return reputationBlockScore; }
+    public double getReputationTrustedSuccesses() { return reputationTrustedSuccesses; }
+    public int getReputationTrustedCodeLength() { return reputationTrustedCodeLength; }
+    public int getReputationMaxEntries() { return reputationMaxEntries; }
+    public String getReputationBlockMessage() { return reputationBlockMessage; }
+
+    public boolean isRestrictionEnabled() { return restrictionEnabled; }
+    public Set<String> getRestrictionAllowedCommands() { return restrictionAllowedCommands; }
+    public String getRestrictionMessage() { return restrictionMessage; }
+
+    public boolean isBookEnabled() { return bookEnabled; }
+    public boolean isBookAutoOpen() { return bookAutoOpen; }
+    public boolean useGUIBook() { return guiBook; }
+    public String getBookTitle() { return bookTitle; }
+    public String getBookAuthor() { return bookAuthor; }
+    public List<String> getBookPages() { return bookPages; }
+
+    public List<String> getJoinMessages() { return joinMessages; }
+    public List<String> getSuccessMessages() { return successMessages; }
+    public List<String> getFailedMessages() { return failedMessages; }
+    public List<String> getTimeoutMessages() { return timeoutMessages; }
+    public List<MessageTemplate> getJoinTemplates() { return joinTemplates; }
+    public List<MessageTemplate> getSuccessTemplates() { return successTemplates; }
+    public List<MessageTemplate> getFailedTemplates() { return failedTemplates; }
+    public List<MessageTemplate> getTimeoutTemplates() { return timeoutTemplates; }
+
+    public boolean giveRewards() { return giveRewards; }
+    public List<String> getRewardCommands() { return rewardCommands; }
+    public boolean logVerifications() { return logVerifications; }
+    public boolean isDebugEnabled() { return debugEnabled; }
+    public boolean isAutoReload() { return autoReload; }
+
+    public boolean isAuditFileEnabled() { return auditFileEnabled; }
+    public int getAuditConsoleRate() { return auditConsoleRate; }
+    public long getAuditMaxFileSize() { return auditMaxFileSize; }
+    public int getAuditBufferSize() { return auditBufferSize; }
+
+    public int getWorkQueueTickBudgetMicros() { return workQueueTickBudgetMicros; }
+
+    public boolean isNetworkEnabled() { return networkEnabled; }
+    public String getNetworkChannel() { return networkChannel; }
+    public String getNetworkSecret() { return networkSecret; }
+
+    public boolean isMetricsFileEnabled() { return metricsFileEnabled; }
+    public int getMetricsFileInterval() { return metricsFileInterval; }
+    public boolean isMetricsHttpEnabled() { return metricsHttpEnabled; }
+    public int getMetricsHttpPort() { return metricsHttpPort; }
+}
@@ -0,0 +1,104 @@
+package cn.popcraft.verify.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶直方图
+ * 作者: Popcraft
+ *
+ * 分桶上限在创建时确定，记录时只需找到对应的桶并累加计数，
+ * 可在任意线程并发调用，不会加锁。
+ */
+public final class Histogram {
+
+    private final String name;
+    private final String help;
+    private final double[] bounds;
+    // 最后一个桶对应 +Inf
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * @param bounds 分桶上限，必须递增
+     */
+    public Histogram(String name, String help, double... bounds) {
+        this.name = name;
+        this.help = help;
+        this.bounds = bounds.clone();
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一个观测值
+     */
+    public void observe(double value) {
+        int index = 0;
+        while (index < bounds.length && value > bounds[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * 记录一段以纳秒计的耗时(以秒为单位保存)
+     */
+    public void observeNanos(long nanos) {
+        observe(nanos / 1_000_000_000D);
+    }
+
+    public long getCount() { return count.sum(); }
+    public double getSum() { return sum.sum(); }
+
+    /**
+     * 平均值，没有数据时为 0
+     */
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0D : sum.sum() / total;
+    }
+
+    /**
+     * 估算分位数，返回该分位数所在桶的上限，落在 +Inf 桶时返回最大的有限上限
+     */
+    public double getQuantile(double quantile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0D;
+        }
+
+        long target = (long) Math.ceil(total * quantile);
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            if (cumulative >= target) {
+                return bounds[i];
+            }
+        }
+        return bounds[bounds.length - 1];
+    }
+
+    /**
+     * 以 Prometheus 文本格式输出
+     */
+    void writePrometheus(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{le=\"").append(bounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[bounds.length].sum();
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(sum.sum()).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
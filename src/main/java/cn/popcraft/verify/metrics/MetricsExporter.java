@@ -0,0 +1,118 @@
+package cn.popcraft.verify.metrics;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.managers.VerifySettings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cn.popcraft.verify.utils.TaskScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 指标导出器
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 定时在异步线程中重写 metrics.prom 文件(供 node_exporter textfile 收集)
+ * - 可选地在本机回环地址上提供 /metrics HTTP 接口
+ *
+ * 配置重载后按新配置重新启动。
+ */
+public class MetricsExporter {
+
+    private static final String FILE_NAME = "metrics.prom";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final VerifyPlugin plugin;
+    private final File file;
+    private TaskScheduler.Task fileTask;
+    private HttpServer httpServer;
+
+    public MetricsExporter(VerifyPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), FILE_NAME);
+    }
+
+    /**
+     * 按当前配置重新启动导出
+     */
+    public void reload() {
+        close();
+
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (settings.isMetricsFileEnabled()) {
+            long period = settings.getMetricsFileInterval() * 20L;
+            fileTask = plugin.getTaskScheduler().runAsyncTimer(this::writeFile, period, period);
+        }
+        if (settings.isMetricsHttpEnabled()) {
+            startHttpServer(settings.getMetricsHttpPort());
+        }
+    }
+
+    /**
+     * 写入临时文件后替换，读取方不会读到写了一半的内容
+     */
+    private void writeFile() {
+        File temp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try {
+            Files.write(temp.toPath(), plugin.getMetrics().toPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("写入指标文件失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 启动只监听本机回环地址的 HTTP 接口
+     */
+    private void startHttpServer(int port) {
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            httpServer.createContext("/metrics", this::handleRequest);
+            httpServer.start();
+            plugin.getLogger().info("指标接口已启动: http://127.0.0.1:" + port + "/metrics");
+        } catch (IOException e) {
+            httpServer = null;
+            plugin.getLogger().warning("无法启动指标接口(端口 " + port + "): " + e.getMessage());
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = plugin.getMetrics().toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 停止导出
+     */
+    public void close() {
+        if (fileTask != null) {
+            fileTask.cancel();
+            fileTask = null;
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+}
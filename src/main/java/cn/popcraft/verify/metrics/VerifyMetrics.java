@@ -0,0 +1,264 @@
+package cn.popcraft.verify.metrics;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.managers.CodePool;
+import cn.popcraft.verify.managers.VerificationManager.VerificationStatus;
+import cn.popcraft.verify.network.NetworkSync;
+import cn.popcraft.verify.protection.AdmissionController;
+import cn.popcraft.verify.protection.IpReputation;
+import cn.popcraft.verify.storage.VerifiedPlayerStore;
+import cn.popcraft.verify.utils.StartupTimer;
+import cn.popcraft.verify.utils.WorkQueue;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 运行指标
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 统计加入、验证会话、验证成功/失败、超时和踢出次数
+ * - 统计会话状态之间的转换次数
+ * - 记录验证耗时、成功所需尝试次数的分布
+ * - 记录超时清理和加入事件处理的耗时
+ * - 记录主线程任务队列每 tick 的耗时和等待数量
+ * - 导出验证码池的填充情况
+ * - 生成 Prometheus 文本格式的输出
+ *
+ * 所有记录方法都可以在任意线程调用。
+ */
+public class VerifyMetrics {
+
+    // 耗时直方图的分桶(秒)，覆盖 10 微秒到 50 毫秒(一个 tick)
+    private static final double[] HANDLER_BOUNDS = {
+        0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05
+    };
+
+    private final VerifyPlugin plugin;
+
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder sessionsCreated = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder kicks = new LongAdder();
+    private final LongAdder workExecuted = new LongAdder();
+    private final LongAdder workBudgetExhausted = new LongAdder();
+
+    // 状态转换计数，下标为 (from + 1) * STATE_COUNT + (to + 1)，0 表示会话不存在
+    private static final VerificationStatus[] STATUSES = VerificationStatus.values();
+    private static final int STATE_COUNT = STATUSES.length + 1;
+    private final LongAdder[] transitions = new LongAdder[STATE_COUNT * STATE_COUNT];
+
+    private final Histogram timeToVerify = new Histogram("verify_time_to_verify_seconds",
+        "从创建验证到验证成功的耗时",
+        1, 2, 5, 10, 15, 30, 60, 120, 300, 600);
+    private final Histogram attemptsPerSuccess = new Histogram("verify_attempts_per_success",
+        "验证成功时使用的尝试次数",
+        1, 2, 3, 4, 5, 10);
+    private final Histogram sweepDuration = new Histogram("verify_timeout_sweep_duration_seconds",
+        "每次超时清理的耗时", HANDLER_BOUNDS);
+    private final Histogram joinDuration = new Histogram("verify_join_handler_duration_seconds",
+        "玩家加入事件处理的耗时(主线程)", HANDLER_BOUNDS);
+    private final Histogram preLoginDuration = new Histogram("verify_prelogin_handler_duration_seconds",
+        "异步登录事件处理的耗时", HANDLER_BOUNDS);
+    private final Histogram workTickDuration = new Histogram("verify_work_queue_tick_seconds",
+        "任务队列每 tick 的耗时(只统计有任务的 tick)", HANDLER_BOUNDS);
+
+    public VerifyMetrics(VerifyPlugin plugin) {
+        this.plugin = plugin;
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = new LongAdder();
+        }
+    }
+
+    public void recordJoin() { joins.increment(); }
+    public void recordSessionCreated() { sessionsCreated.increment(); }
+    public void recordFailure() { failures.increment(); }
+    public void recordTimeout() { timeouts.increment(); }
+    public void recordKick() { kicks.increment(); }
+
+    /**
+     * 记录一次验证成功
+     *
+     * @param elapsedMillis 从创建验证到成功的耗时
+     * @param attempts      包括本次在内的尝试次数
+     */
+    public void recordSuccess(long elapsedMillis, int attempts) {
+        successes.increment();
+        timeToVerify.observe(elapsedMillis / 1000D);
+        attemptsPerSuccess.observe(attempts);
+    }
+
+    /**
+     * 记录一次会话状态转换
+     *
+     * @param from 原状态，新添加的会话为 null
+     * @param to   新状态，被移除的会话为 null
+     */
+    public void recordTransition(VerificationStatus from, VerificationStatus to) {
+        transitions[stateIndex(from) * STATE_COUNT + stateIndex(to)].increment();
+    }
+
+    private static int stateIndex(VerificationStatus status) {
+        return status == null ? 0 : status.ordinal() + 1;
+    }
+
+    private static String stateName(int index) {
+        return index == 0 ? "none" : STATUSES[index - 1].name().toLowerCase();
+    }
+
+    public void recordSweep(long nanos) { sweepDuration.observeNanos(nanos); }
+    public void recordJoinHandler(long nanos) { joinDuration.observeNanos(nanos); }
+    public void recordPreLoginHandler(long nanos) { preLoginDuration.observeNanos(nanos); }
+
+    /**
+     * 记录任务队列一个 tick 的执行情况
+     *
+     * @param nanos     本 tick 的耗时
+     * @param executed  本 tick 执行的任务数
+     * @param remaining 用完预算后是否仍有任务等待
+     */
+    public void recordWorkTick(long nanos, int executed, boolean remaining) {
+        workTickDuration.observeNanos(nanos);
+        workExecuted.add(executed);
+        if (remaining) {
+            workBudgetExhausted.increment();
+        }
+    }
+
+    public long getJoins() { return joins.sum(); }
+    public long getSessionsCreated() { return sessionsCreated.sum(); }
+    public long getSuccesses() { return successes.sum(); }
+    public long getFailures() { return failures.sum(); }
+    public long getTimeouts() { return timeouts.sum(); }
+    public long getKicks() { return kicks.sum(); }
+    public long getWorkExecuted() { return workExecuted.sum(); }
+    public long getWorkBudgetExhausted() { return workBudgetExhausted.sum(); }
+
+    public Histogram getTimeToVerify() { return timeToVerify; }
+    public Histogram getAttemptsPerSuccess() { return attemptsPerSuccess; }
+    public Histogram getSweepDuration() { return sweepDuration; }
+    public Histogram getJoinDuration() { return joinDuration; }
+    public Histogram getPreLoginDuration() { return preLoginDuration; }
+    public Histogram getWorkTickDuration() { return workTickDuration; }
+
+    /**
+     * 生成 Prometheus 文本格式(0.0.4)的全部指标
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+
+        writeCounter(out, "verify_joins_total", "玩家加入次数", joins.sum());
+        writeCounter(out, "verify_sessions_created_total", "创建的验证会话数", sessionsCreated.sum());
+        writeCounter(out, "verify_successes_total", "验证成功次数", successes.sum());
+        writeCounter(out, "verify_failures_total", "输入错误验证码的次数", failures.sum());
+        writeCounter(out, "verify_timeouts_total", "验证超时次数", timeouts.sum());
+        writeCounter(out, "verify_kicks_total", "因验证失败或超时被踢出的次数", kicks.sum());
+
+        out.append("# HELP verify_status_transitions_total 会话状态转换次数(none 表示添加前或移除后)\n");
+        out.append("# TYPE verify_status_transitions_total counter\n");
+        for (int i = 0; i < transitions.length; i++) {
+            long value = transitions[i].sum();
+            if (value > 0) {
+                out.append("verify_status_transitions_total{from=\"").append(stateName(i / STATE_COUNT))
+                    .append("\",to=\"").append(stateName(i % STATE_COUNT)).append("\"} ").append(value).append('\n');
+            }
+        }
+
+        AdmissionController admission = plugin.getAdmissionController();
+        if (admission != null) {
+            out.append("# HELP verify_admission_shed_total 登录阶段被拒绝的连接数\n");
+            out.append("# TYPE verify_admission_shed_total counter\n");
+            out.append("verify_admission_shed_total{reason=\"global\"} ").append(admission.getShedGlobalCount()).append('\n');
+            out.append("verify_admission_shed_total{reason=\"subnet\"} ").append(admission.getShedSubnetCount()).append('\n');
+            out.append("verify_admission_shed_total{reason=\"pending\"} ").append(admission.getShedPendingCount()).append('\n');
+            writeCounter(out, "verify_admission_admitted_total", "登录阶段放行的待验证连接数", admission.getAdmittedCount());
+        }
+
+        IpReputation reputation = plugin.getIpReputation();
+        if (reputation != null) {
+            writeCounter(out, "verify_reputation_blocked_total", "因网段信誉过低被拒绝的连接数", reputation.getBlockedCount());
+            writeCounter(out, "verify_reputation_trusted_total", "因信誉良好使用较短验证码的连接数", reputation.getTrustedCount());
+            writeGauge(out, "verify_reputation_prefixes", "信誉前缀树中的节点数", reputation.getTrackedPrefixes());
+        }
+
+        if (plugin.getVerificationManager() != null) {
+            writeGauge(out, "verify_pending_sessions", "已分配的验证会话数(包括尚未进入服务器的连接)",
+                plugin.getVerificationManager().getPendingSessionCount());
+
+            writeGauge(out, "verify_session_table_bytes", "会话表数组占用的内存估算值(字节)",
+                plugin.getVerificationManager().getSessionTable().estimatedBytes());
+
+            CodePool codePool = plugin.getVerificationManager().getCodePool();
+            writeGauge(out, "verify_code_pool_available", "验证码池中可用的验证码数量", codePool.getAvailable());
+            writeGauge(out, "verify_code_pool_capacity", "验证码池容量", codePool.getCapacity());
+            writeCounter(out, "verify_code_pool_misses_total", "验证码池为空时直接生成的次数", codePool.getMissCount());
+        }
+        WorkQueue workQueue = plugin.getWorkQueue();
+        if (workQueue != null) {
+            out.append("# HELP verify_work_queue_depth 任务队列中等待执行的任务数\n");
+            out.append("# TYPE verify_work_queue_depth gauge\n");
+            for (WorkQueue.Priority priority : WorkQueue.Priority.values()) {
+                out.append("verify_work_queue_depth{priority=\"").append(priority.name().toLowerCase())
+                    .append("\"} ").append(workQueue.getDepth(priority)).append('\n');
+            }
+            writeCounter(out, "verify_work_queue_executed_total", "任务队列执行的任务数", workExecuted.sum());
+            writeCounter(out, "verify_work_queue_budget_exhausted_total", "用完时间预算后仍有任务等待的 tick 数",
+                workBudgetExhausted.sum());
+        }
+        VerifiedPlayerStore store = plugin.getVerifiedPlayerStore();
+        if (store != null) {
+            writeGauge(out, "verify_verified_players", "已验证玩家记录数", store.size());
+            writeGauge(out, "verify_verified_filter_bytes", "已验证玩家过滤器占用的内存(字节)", store.getFilterBytes());
+            writeCounter(out, "verify_verified_filter_negatives_total", "由过滤器直接判定为未验证、无需查询记录的次数",
+                store.getFilterNegativeCount());
+        }
+        NetworkSync networkSync = plugin.getNetworkSync();
+        if (networkSync != null && networkSync.isEnabled()) {
+            writeCounter(out, "verify_network_sent_total", "广播给其他服务器的同步消息数", networkSync.getSentCount());
+            writeCounter(out, "verify_network_received_total", "收到的同步消息数", networkSync.getReceivedCount());
+            writeCounter(out, "verify_network_applied_total", "更新了本地验证记录的同步消息数",
+                networkSync.getAppliedCount());
+            writeCounter(out, "verify_network_rejected_total", "格式、签名或时间不正确而被拒绝的同步消息数",
+                networkSync.getRejectedCount());
+        }
+        if (plugin.getAuditLog() != null) {
+            writeCounter(out, "verify_audit_dropped_total", "因缓冲区已满而丢弃的审计记录数",
+                plugin.getAuditLog().getDroppedCount());
+        }
+        StartupTimer startupTimer = plugin.getStartupTimer();
+        if (startupTimer != null) {
+            out.append("# HELP verify_startup_phase_seconds 启用插件时各阶段的耗时\n");
+            out.append("# TYPE verify_startup_phase_seconds gauge\n");
+            for (StartupTimer.Phase phase : startupTimer.getPhases()) {
+                out.append("verify_startup_phase_seconds{phase=\"").append(phase.getName()).append("\"} ")
+                    .append(phase.getNanos() / 1_000_000_000D).append('\n');
+            }
+            out.append("# HELP verify_startup_seconds 启用插件的总耗时\n");
+            out.append("# TYPE verify_startup_seconds gauge\n");
+            out.append("verify_startup_seconds ").append(startupTimer.getTotalNanos() / 1_000_000_000D).append('\n');
+        }
+
+        timeToVerify.writePrometheus(out);
+        attemptsPerSuccess.writePrometheus(out);
+        sweepDuration.writePrometheus(out);
+        joinDuration.writePrometheus(out);
+        preLoginDuration.writePrometheus(out);
+        workTickDuration.writePrometheus(out);
+
+        return out.toString();
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeGauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,143 @@
+package cn.popcraft.verify.network;
+
+import cn.popcraft.verify.VerifyPlugin;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 经代理转发的消息通道
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 通过 BungeeCord 插件消息通道的 Forward 子命令把消息广播给网络中的其他服务器
+ *   (Velocity 需要开启 bungee-plugin-message-channel)
+ * - 接收其他服务器转发来的消息
+ * - 没有在线玩家时暂存消息，有玩家加入后再发送
+ *
+ * 插件消息只能借助某个在线玩家的连接发送，发送在全局线程中进行。
+ */
+public class BungeeSyncChannel implements SyncChannel, PluginMessageListener {
+
+    private static final String BUNGEE_CHANNEL = "BungeeCord";
+    private static final String FORWARD = "Forward";
+    private static final String ALL_SERVERS = "ALL";
+
+    // 暂存消息的上限，超出时丢弃最早的消息
+    private static final int MAX_PENDING = 1024;
+
+    private final VerifyPlugin plugin;
+    private final String subChannel;
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private volatile Consumer<byte[]> receiver;
+
+    /**
+     * @param subChannel Forward 子频道名称，网络中所有服务器必须相同
+     */
+    public BungeeSyncChannel(VerifyPlugin plugin, String subChannel) {
+        this.plugin = plugin;
+        this.subChannel = subChannel;
+    }
+
+    @Override
+    public void open(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, BUNGEE_CHANNEL);
+        plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, BUNGEE_CHANNEL, this);
+    }
+
+    @Override
+    public void send(byte[] payload) {
+        pending.offer(forward(payload));
+        if (pendingCount.incrementAndGet() > MAX_PENDING && pending.poll() != null) {
+            pendingCount.decrementAndGet();
+        }
+        plugin.getTaskScheduler().runGlobal(this::flush);
+    }
+
+    /**
+     * 借助任意一个在线玩家发送暂存的消息(全局线程)
+     */
+    @Override
+    public void flush() {
+        if (receiver == null || pending.isEmpty()) {
+            return;
+        }
+
+        Iterator<? extends Player> players = plugin.getServer().getOnlinePlayers().iterator();
+        if (!players.hasNext()) {
+            return;
+        }
+        Player carrier = players.next();
+
+        byte[] message;
+        while ((message = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            carrier.sendPluginMessage(plugin, BUNGEE_CHANNEL, message);
+        }
+    }
+
+    /**
+     * 包装为 Forward 子命令: 目标服务器、子频道、数据长度和数据
+     */
+    private byte[] forward(byte[] payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(FORWARD);
+            out.writeUTF(ALL_SERVERS);
+            out.writeUTF(subChannel);
+            out.writeShort(payload.length);
+            out.write(payload);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 接收代理转发的消息，只处理本插件的子频道
+     */
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        Consumer<byte[]> target = receiver;
+        if (target == null || !BUNGEE_CHANNEL.equals(channel)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            if (!subChannel.equals(in.readUTF())) {
+                return;
+            }
+            byte[] payload = new byte[in.readUnsignedShort()];
+            in.readFully(payload);
+            target.accept(payload);
+        } catch (IOException ignored) {
+            // 其他插件的消息或格式错误的消息
+        }
+    }
+
+    @Override
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+        plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin, BUNGEE_CHANNEL, this);
+        plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin, BUNGEE_CHANNEL);
+        pending.clear();
+        pendingCount.set(0);
+    }
+}
@@ -0,0 +1,72 @@
+package cn.popcraft.verify.network;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的消息通道
+ * 作者: Popcraft
+ *
+ * 代替代理的插件消息通道: 连接到同一个 Hub 的通道互相广播，消息在发送线程中同步投递，
+ * 可以在不启动代理和多台服务器的情况下验证同步协议。
+ */
+public class LocalSyncChannel implements SyncChannel {
+
+    private final Hub hub;
+    private volatile Consumer<byte[]> receiver;
+
+    /**
+     * 模拟的代理，转发消息给除发送方以外的所有通道
+     */
+    public static final class Hub {
+        private final List<LocalSyncChannel> channels = new CopyOnWriteArrayList<>();
+
+        /**
+         * 创建一个连接到此 Hub 的通道
+         */
+        public LocalSyncChannel connect() {
+            return new LocalSyncChannel(this);
+        }
+
+        private void forward(LocalSyncChannel sender, byte[] payload) {
+            for (LocalSyncChannel channel : channels) {
+                Consumer<byte[]> target = channel.receiver;
+                if (channel != sender && target != null) {
+                    target.accept(payload.clone());
+                }
+            }
+        }
+    }
+
+    private LocalSyncChannel(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void open(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        hub.channels.add(this);
+    }
+
+    @Override
+    public void send(byte[] payload) {
+        hub.forward(this, payload);
+    }
+
+    @Override
+    public boolean hasPending() {
+        return false;
+    }
+
+    @Override
+    public void flush() {
+        // 消息总是直接投递，没有暂存
+    }
+
+    @Override
+    public void close() {
+        hub.channels.remove(this);
+        receiver = null;
+    }
+}
@@ -0,0 +1,184 @@
+package cn.popcraft.verify.network;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.managers.VerifySettings;
+import cn.popcraft.verify.storage.VerifiedPlayerStore;
+import org.bukkit.entity.Player;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 跨服验证状态同步
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 玩家在本服完成验证或被撤销验证时广播给网络中的其他服务器
+ * - 把其他服务器广播的验证和撤销合并到本地的 VerifiedPlayerStore
+ * - 拒绝无法解析、签名错误或发送时间相差过大的消息
+ * - 没有共享密钥时不打开通道，验证消息可以让任意玩家跳过验证，必须签名
+ * - 在允许的时间偏差内记住撤销时间，晚到的旧验证消息不会恢复已撤销的记录
+ *
+ * 加入时只查询本地的 VerifiedPlayerStore，不会等待其他服务器，
+ * 同一网络中玩家只需在任意一台服务器上验证一次。
+ * 通道由配置决定，也可以通过 start 传入 LocalSyncChannel 在同一进程中模拟多台服务器。
+ */
+public class NetworkSync {
+
+    // 允许的发送时间偏差，超出的消息视为重放
+    private static final long MAX_CLOCK_SKEW_MILLIS = 5 * 60 * 1000L;
+
+    private final VerifyPlugin plugin;
+    private final VerifiedPlayerStore store;
+    private final long nodeId;
+    private volatile SyncChannel channel;
+    private volatile byte[] secret;
+    private final Map<UUID, Long> revokedAt = new ConcurrentHashMap<>();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public NetworkSync(VerifyPlugin plugin, VerifiedPlayerStore store) {
+        this.plugin = plugin;
+        this.store = store;
+        this.nodeId = new SecureRandom().nextLong();
+    }
+
+    /**
+     * 按当前配置重新打开通道
+     */
+    public void reload() {
+        close();
+
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (!settings.isNetworkEnabled()) {
+            return;
+        }
+        byte[] key = SyncMessage.secretKey(settings.getNetworkSecret());
+        if (key == null) {
+            plugin.getLogger().warning("跨服同步未启用: network.enabled 为 true 但 network.secret 为空，"
+                + "未签名的同步消息可以让任意玩家跳过验证，请在网络中所有服务器设置相同的 network.secret");
+            return;
+        }
+        start(new BungeeSyncChannel(plugin, settings.getNetworkChannel()), key);
+        plugin.getLogger().info("跨服同步已启用，子频道: " + settings.getNetworkChannel() + " (已签名)");
+    }
+
+    /**
+     * 使用指定的通道开始同步
+     *
+     * @param secret 共享密钥，为 null 时不签名，也不接受其他服务器的验证消息(只合并撤销)
+     */
+    public void start(SyncChannel channel, byte[] secret) {
+        close();
+        this.secret = secret;
+        channel.open(this::receive);
+        this.channel = channel;
+    }
+
+    /**
+     * 广播玩家完成验证
+     */
+    public void announceVerified(UUID playerId, long verifiedAt, String ip) {
+        broadcast(SyncMessage.verified(nodeId, playerId, verifiedAt, ip));
+    }
+
+    /**
+     * 广播撤销玩家的验证记录
+     */
+    public void announceInvalidated(UUID playerId) {
+        SyncMessage message = SyncMessage.invalidate(nodeId, playerId);
+        rememberRevoked(playerId, message.getVerifiedAt());
+        broadcast(message);
+    }
+
+    /**
+     * 记住撤销时间，超出时间偏差的旧记录同时清除(撤销很少发生)
+     */
+    private void rememberRevoked(UUID playerId, long time) {
+        long oldest = System.currentTimeMillis() - MAX_CLOCK_SKEW_MILLIS;
+        revokedAt.values().removeIf(previous -> previous < oldest);
+        revokedAt.merge(playerId, time, Math::max);
+    }
+
+    private void broadcast(SyncMessage message) {
+        SyncChannel target = channel;
+        if (target != null) {
+            target.send(message.encode(secret));
+            sent.increment();
+        }
+    }
+
+    /**
+     * 处理其他服务器的消息(任意线程)
+     */
+    private void receive(byte[] data) {
+        received.increment();
+
+        SyncMessage message = SyncMessage.decode(data, secret);
+        if (message == null || Math.abs(System.currentTimeMillis() - message.getSentAt()) > MAX_CLOCK_SKEW_MILLIS) {
+            rejected.increment();
+            return;
+        }
+        if (message.getNodeId() == nodeId) {
+            return;
+        }
+
+        if (message.getType() == SyncMessage.Type.VERIFIED && secret == null) {
+            // 未签名时无法确认来源，验证消息不合并
+            rejected.increment();
+            return;
+        }
+
+        boolean changed;
+        if (message.getType() == SyncMessage.Type.VERIFIED) {
+            Long revoked = revokedAt.get(message.getPlayerId());
+            changed = (revoked == null || message.getVerifiedAt() > revoked)
+                && store.mergeVerified(message.getPlayerId(), message.getVerifiedAt(), message.getIp());
+        } else {
+            rememberRevoked(message.getPlayerId(), message.getVerifiedAt());
+            changed = store.mergeRevoked(message.getPlayerId(), message.getVerifiedAt());
+        }
+        if (changed) {
+            applied.increment();
+        }
+    }
+
+    /**
+     * 玩家加入后发送暂存的消息(插件消息需要借助玩家的连接发送)
+     */
+    public void onPlayerJoin(Player player) {
+        SyncChannel target = channel;
+        if (target != null && target.hasPending()) {
+            plugin.getTaskScheduler().runForPlayerLater(player, target::flush, 20L);
+        }
+    }
+
+    /**
+     * 是否已打开通道
+     */
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    public long getSentCount() { return sent.sum(); }
+    public long getReceivedCount() { return received.sum(); }
+    public long getAppliedCount() { return applied.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+
+    /**
+     * 关闭通道
+     */
+    public void close() {
+        SyncChannel current = channel;
+        channel = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package cn.popcraft.verify.network;
+
+import java.util.function.Consumer;
+
+/**
+ * 服务器之间的消息通道
+ * 作者: Popcraft
+ *
+ * 把消息广播给同一网络中的其他后端服务器，不会发回给自己。
+ * 实现包括经代理转发的 BungeeSyncChannel，以及用于在同一进程中模拟多台服务器的 LocalSyncChannel。
+ */
+public interface SyncChannel {
+
+    /**
+     * 开始接收消息，回调可能在任意线程调用
+     */
+    void open(Consumer<byte[]> receiver);
+
+    /**
+     * 广播消息
+     */
+    void send(byte[] payload);
+
+    /**
+     * 是否有因没有可用连接而暂存的消息
+     */
+    boolean hasPending();
+
+    /**
+     * 发送之前因没有可用连接而暂存的消息
+     */
+    void flush();
+
+    /**
+     * 停止接收和发送
+     */
+    void close();
+}
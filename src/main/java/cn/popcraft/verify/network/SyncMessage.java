@@ -0,0 +1,170 @@
+package cn.popcraft.verify.network;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 跨服同步消息
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 验证(VERIFIED)和撤销(INVALIDATE)消息的编码与解码
+ * - 配置了共享密钥时附加并校验 HMAC-SHA256 签名
+ *
+ * 消息格式(大端):
+ * - byte 版本, byte 类型, long 发送方节点编号, long 发送时间
+ * - long UUID 高位, long UUID 低位
+ * - long 验证时间, UTF IP(空字符串表示无)  仅 VERIFIED
+ * - 32 字节签名                           仅配置了共享密钥时
+ */
+public final class SyncMessage {
+
+    private static final byte VERSION = 1;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+
+    /**
+     * 消息类型
+     */
+    public enum Type {
+        VERIFIED,       // 玩家完成验证
+        INVALIDATE      // 撤销玩家的验证记录
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private final Type type;
+    private final long nodeId;
+    private final long sentAt;
+    private final UUID playerId;
+    private final long verifiedAt;
+    private final String ip;
+
+    private SyncMessage(Type type, long nodeId, long sentAt, UUID playerId, long verifiedAt, String ip) {
+        this.type = type;
+        this.nodeId = nodeId;
+        this.sentAt = sentAt;
+        this.playerId = playerId;
+        this.verifiedAt = verifiedAt;
+        this.ip = ip;
+    }
+
+    /**
+     * 创建验证消息
+     */
+    public static SyncMessage verified(long nodeId, UUID playerId, long verifiedAt, String ip) {
+        return new SyncMessage(Type.VERIFIED, nodeId, System.currentTimeMillis(), playerId, verifiedAt, ip);
+    }
+
+    /**
+     * 创建撤销消息，撤销时间即发送时间
+     */
+    public static SyncMessage invalidate(long nodeId, UUID playerId) {
+        long now = System.currentTimeMillis();
+        return new SyncMessage(Type.INVALIDATE, nodeId, now, playerId, now, null);
+    }
+
+    /**
+     * 编码消息
+     *
+     * @param secret 共享密钥，为 null 时不签名
+     */
+    public byte[] encode(byte[] secret) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeByte(type.ordinal());
+            out.writeLong(nodeId);
+            out.writeLong(sentAt);
+            out.writeLong(playerId.getMostSignificantBits());
+            out.writeLong(playerId.getLeastSignificantBits());
+            if (type == Type.VERIFIED) {
+                out.writeLong(verifiedAt);
+                out.writeUTF(ip == null ? "" : ip);
+            }
+            if (secret != null) {
+                out.write(sign(secret, bytes.toByteArray(), bytes.size()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 解码消息，格式错误、版本不符或签名不正确时返回 null
+     *
+     * @param secret 共享密钥，为 null 时不校验签名
+     */
+    public static SyncMessage decode(byte[] data, byte[] secret) {
+        int length = data.length;
+        if (secret != null) {
+            length -= MAC_LENGTH;
+            if (length <= 0) {
+                return null;
+            }
+            byte[] expected = sign(secret, data, length);
+            byte[] actual = Arrays.copyOfRange(data, length, data.length);
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return null;
+            }
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            int typeIndex = in.readUnsignedByte();
+            if (typeIndex >= TYPES.length) {
+                return null;
+            }
+            Type type = TYPES[typeIndex];
+            long nodeId = in.readLong();
+            long sentAt = in.readLong();
+            UUID playerId = new UUID(in.readLong(), in.readLong());
+            if (type == Type.INVALIDATE) {
+                return new SyncMessage(type, nodeId, sentAt, playerId, sentAt, null);
+            }
+            long verifiedAt = in.readLong();
+            String ip = in.readUTF();
+            return new SyncMessage(type, nodeId, sentAt, playerId, verifiedAt, ip.isEmpty() ? null : ip);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] sign(byte[] secret, byte[] data, int length) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 把配置中的共享密钥转换为签名密钥，为空时返回 null
+     */
+    public static byte[] secretKey(String secret) {
+        return secret == null || secret.isEmpty() ? null : secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Type getType() { return type; }
+    public long getNodeId() { return nodeId; }
+    public long getSentAt() { return sentAt; }
+    public UUID getPlayerId() { return playerId; }
+    public long getVerifiedAt() { return verifiedAt; }
+    public String getIp() { return ip; }
+}
@@ -0,0 +1,160 @@
+package cn.popcraft.verify.protection;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.managers.ConfigSection;
+import cn.popcraft.verify.managers.VerifySettings;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录准入控制器
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 全局和按网段(IPv4 /24, IPv6 /48)的令牌桶限流
+ * - 限制同时等待验证的人数
+ * - 统计被拒绝的连接数
+ *
+ * 只对需要验证的新连接生效，已验证的玩家不受影响。
+ */
+public class AdmissionController {
+
+    // 网段令牌桶空闲多久后回收
+    private static final long BUCKET_IDLE_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private final VerifyPlugin plugin;
+    private final Map<Long, TokenBucket> subnetBuckets;
+    private volatile TokenBucket globalBucket;
+    private volatile int settingsVersion;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder shedGlobal = new LongAdder();
+    private final LongAdder shedSubnet = new LongAdder();
+    private final LongAdder shedPending = new LongAdder();
+
+    /**
+     * 准入结果
+     */
+    public enum Result {
+        ADMITTED,       // 放行
+        GLOBAL_LIMIT,   // 超出全局速率
+        SUBNET_LIMIT,   // 超出网段速率
+        PENDING_LIMIT   // 等待验证人数已满
+    }
+
+    public AdmissionController(VerifyPlugin plugin) {
+        this.plugin = plugin;
+        this.subnetBuckets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 判断是否允许一个新的待验证连接(在异步登录线程中调用)
+     *
+     * @param address      连接地址
+     * @param pendingCount 当前等待验证的人数
+     */
+    public Result tryAdmit(InetAddress address, int pendingCount) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (!settings.isAdmissionEnabled()) {
+            return Result.ADMITTED;
+        }
+
+        if (settingsVersion != settings.getVersion(ConfigSection.ADMISSION)) {
+            rebuild(settings);
+        }
+
+        if (settings.getAdmissionMaxPending() > 0 && pendingCount >= settings.getAdmissionMaxPending()) {
+            shedPending.increment();
+            return Result.PENDING_LIMIT;
+        }
+
+        // 先检查网段: 单个网段的洪泛不会消耗全局令牌
+        TokenBucket subnetBucket = null;
+        if (address != null) {
+            subnetBucket = subnetBuckets.computeIfAbsent(subnetKey(address),
+                key -> new TokenBucket(settings.getAdmissionSubnetRate(), settings.getAdmissionSubnetBurst()));
+            if (!subnetBucket.tryAcquire()) {
+                shedSubnet.increment();
+                return Result.SUBNET_LIMIT;
+            }
+        }
+
+        if (!globalBucket.tryAcquire()) {
+            // 被全局限制拒绝的连接归还网段令牌，全局洪泛时不会重复惩罚各个网段
+            if (subnetBucket != null) {
+                subnetBucket.release();
+            }
+            shedGlobal.increment();
+            return Result.GLOBAL_LIMIT;
+        }
+
+        admitted.increment();
+        return Result.ADMITTED;
+    }
+
+    /**
+     * 配置变更后按新的速率重建令牌桶
+     */
+    private synchronized void rebuild(VerifySettings settings) {
+        if (settingsVersion == settings.getVersion(ConfigSection.ADMISSION)) {
+            return;
+        }
+        globalBucket = new TokenBucket(settings.getAdmissionGlobalRate(), settings.getAdmissionGlobalBurst());
+        subnetBuckets.clear();
+        settingsVersion = settings.getVersion(ConfigSection.ADMISSION);
+    }
+
+    /**
+     * 计算地址所属网段的键值: IPv4 取前 24 位，IPv6 取前 48 位
+     */
+    static long subnetKey(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            return (1L << 48) | ((bytes[0] & 0xFFL) << 16) | ((bytes[1] & 0xFFL) << 8) | (bytes[2] & 0xFFL);
+        }
+
+        long key = 0L;
+        for (int i = 0; i < 6; i++) {
+            key = (key << 8) | (bytes[i] & 0xFFL);
+        }
+        return (2L << 48) | key;
+    }
+
+    /**
+     * 回收长时间空闲的网段令牌桶
+     */
+    public void purgeIdleBuckets() {
+        long now = System.nanoTime();
+        Iterator<TokenBucket> iterator = subnetBuckets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isIdle(now, BUCKET_IDLE_NANOS)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public long getAdmittedCount() { return admitted.sum(); }
+    public long getShedGlobalCount() { return shedGlobal.sum(); }
+    public long getShedSubnetCount() { return shedSubnet.sum(); }
+    public long getShedPendingCount() { return shedPending.sum(); }
+
+    /**
+     * 获取被拒绝的连接总数
+     */
+    public long getShedCount() {
+        return shedGlobal.sum() + shedSubnet.sum() + shedPending.sum();
+    }
+
+    /**
+     * 获取当前跟踪的网段数量
+     */
+    public int getTrackedSubnets() {
+        return subnetBuckets.size();
+    }
+}
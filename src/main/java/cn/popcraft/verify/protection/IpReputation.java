@@ -0,0 +1,139 @@
+package cn.popcraft.verify.protection;
+
+import cn.popcraft.verify.VerifyPlugin;
+import cn.popcraft.verify.managers.VerifySettings;
+import cn.popcraft.verify.utils.TaskScheduler;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IP 网段信誉
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 根据验证成功、验证失败和验证超时更新地址所在网段的分数
+ * - 登录阶段拒绝失败明显多于成功的网段
+ * - 长期只有成功记录的地址使用较短的验证码
+ * - 定时在异步线程中丢弃已衰减的网段
+ *
+ * 分数保存在 ReputationTrie 中，查询不加锁，可在异步登录线程中直接调用。
+ */
+public class IpReputation {
+
+    // 衰减到此值以下的网段在整理时丢弃
+    private static final double PRUNE_THRESHOLD = 0.05D;
+    // 整理间隔(tick)
+    private static final long PRUNE_PERIOD_TICKS = 60L * 20L;
+
+    private final VerifyPlugin plugin;
+    private final ReputationTrie trie = new ReputationTrie();
+    private TaskScheduler.Task pruneTask;
+
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder trusted = new LongAdder();
+
+    /**
+     * 判定结果
+     */
+    public enum Verdict {
+        TRUSTED,    // 信誉良好，使用较短的验证码
+        NORMAL,     // 正常验证
+        BLOCKED     // 网段信誉过低，拒绝登录
+    }
+
+    public IpReputation(VerifyPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 按配置启动或停止定时整理任务
+     */
+    public synchronized void update() {
+        if (!plugin.getConfigManager().getSettings().isReputationEnabled()) {
+            close();
+        } else if (pruneTask == null) {
+            pruneTask = plugin.getTaskScheduler().runAsyncTimer(this::prune, PRUNE_PERIOD_TICKS, PRUNE_PERIOD_TICKS);
+        }
+    }
+
+    /**
+     * 判定连接地址的信誉(异步登录线程)
+     */
+    public Verdict assess(InetAddress address) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (!settings.isReputationEnabled() || address == null) {
+            return Verdict.NORMAL;
+        }
+
+        ReputationTrie.Assessment assessment = trie.assess(address, System.currentTimeMillis(),
+            settings.getReputationDecayRate());
+        if (assessment.getWorstNet() >= settings.getReputationBlockScore()) {
+            blocked.increment();
+            return Verdict.BLOCKED;
+        }
+        if (assessment.getHostSuccesses() >= settings.getReputationTrustedSuccesses()
+                && assessment.getHostFailures() < 1D) {
+            trusted.increment();
+            return Verdict.TRUSTED;
+        }
+        return Verdict.NORMAL;
+    }
+
+    /**
+     * 获取地址所在的最差网段，例如 203.0.113.0/24，没有记录时返回地址本身
+     */
+    public String describeWorstPrefix(InetAddress address) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        int length = trie.assess(address, System.currentTimeMillis(), settings.getReputationDecayRate())
+            .getWorstLength();
+        return length < 0 ? address.getHostAddress() : ReputationTrie.formatPrefix(address, length);
+    }
+
+    /**
+     * 记录一次验证成功
+     */
+    public void recordSuccess(InetAddress address) {
+        record(address, 1D, 0D);
+    }
+
+    /**
+     * 记录一次验证失败(次数用完)或超时
+     */
+    public void recordFailure(InetAddress address) {
+        record(address, 0D, 1D);
+    }
+
+    private void record(InetAddress address, double successes, double failures) {
+        VerifySettings settings = plugin.getConfigManager().getSettings();
+        if (settings.isReputationEnabled() && address != null) {
+            trie.record(address, successes, failures, System.currentTimeMillis(),
+                settings.getReputationDecayRate(), settings.getReputationMaxEntries());
+        }
+    }
+
+    private void prune() {
+        trie.prune(System.currentTimeMillis(), plugin.getConfigManager().getSettings().getReputationDecayRate(),
+            PRUNE_THRESHOLD);
+    }
+
+    public long getBlockedCount() { return blocked.sum(); }
+    public long getTrustedCount() { return trusted.sum(); }
+
+    /**
+     * 获取当前跟踪的网段节点数量
+     */
+    public int getTrackedPrefixes() {
+        return trie.size();
+    }
+
+    /**
+     * 停止整理任务
+     */
+    public synchronized void close() {
+        if (pruneTask != null) {
+            pruneTask.cancel();
+            pruneTask = null;
+        }
+    }
+}
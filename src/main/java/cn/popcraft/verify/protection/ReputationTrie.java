@@ -0,0 +1,378 @@
+package cn.popcraft.verify.protection;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * IP 网段信誉前缀树
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 以压缩前缀树(Patricia)保存各级网段的成功和失败分数
+ * - 分数随时间按半衰期指数衰减，读取时按经过的时间折算
+ * - 查询地址所在的各级网段，给出最差的网段和单个主机的分数
+ *
+ * 键为 128 位地址，IPv4 映射到 ::ffff:0:0/96。每次记录同时更新
+ * IPv4 的 /32、/24、/16 或 IPv6 的 /64、/48、/32 三级网段。
+ *
+ * 查询不加锁: 子节点和分数都是 volatile 字段，分数是不可变对象，通过 CAS 替换；
+ * 只有创建节点和整理时加锁，新节点构造完成后才挂到树上。
+ */
+public final class ReputationTrie {
+
+    private static final int KEY_BITS = 128;
+    private static final long IPV4_MAPPED = 0x0000FFFF00000000L;
+    private static final int IPV4_OFFSET = 96;
+
+    // 记录分数的网段长度(128 位键中的前缀长度)，第一级为单个主机
+    private static final int[] IPV4_LEVELS = {128, 120, 112};
+    private static final int[] IPV6_LEVELS = {64, 48, 32};
+
+    private static final AtomicReferenceFieldUpdater<Node, Score> SCORE =
+        AtomicReferenceFieldUpdater.newUpdater(Node.class, Score.class, "score");
+
+    private volatile Node root = new Node(0L, 0L, 0);
+    private volatile int nodeCount;
+
+    /**
+     * 某一时刻的分数，不可变
+     */
+    public static final class Score {
+        private final double successes;
+        private final double failures;
+        private final long updatedAt;
+
+        private Score(double successes, double failures, long updatedAt) {
+            this.successes = successes;
+            this.failures = failures;
+            this.updatedAt = updatedAt;
+        }
+
+        /**
+         * 折算到指定时间的衰减系数
+         */
+        private double factor(long now, double decayRate) {
+            long elapsed = now - updatedAt;
+            return elapsed <= 0L ? 1D : Math.exp(-decayRate * elapsed);
+        }
+    }
+
+    /**
+     * 查询结果
+     */
+    public static final class Assessment {
+        private final double hostSuccesses;
+        private final double hostFailures;
+        private final double worstNet;
+        private final int worstLength;
+
+        private Assessment(double hostSuccesses, double hostFailures, double worstNet, int worstLength) {
+            this.hostSuccesses = hostSuccesses;
+            this.hostFailures = hostFailures;
+            this.worstNet = worstNet;
+            this.worstLength = worstLength;
+        }
+
+        /** 单个主机(IPv4 /32, IPv6 /64)的成功分数 */
+        public double getHostSuccesses() { return hostSuccesses; }
+        /** 单个主机的失败分数 */
+        public double getHostFailures() { return hostFailures; }
+        /** 各级网段中 失败分数 - 成功分数 的最大值 */
+        public double getWorstNet() { return worstNet; }
+        /** 最差网段的前缀长度(按地址本身的位数)，没有记录时为 -1 */
+        public int getWorstLength() { return worstLength; }
+    }
+
+    /**
+     * 树节点，前缀为 (high, low) 的前 length 位
+     */
+    private static final class Node {
+        private final long high;
+        private final long low;
+        private final int length;
+        private volatile Node zero;
+        private volatile Node one;
+        private volatile Score score;
+
+        private Node(long high, long low, int length) {
+            this.high = maskHigh(high, length);
+            this.low = maskLow(low, length);
+            this.length = length;
+        }
+    }
+
+    /**
+     * 为地址所在的各级网段累加分数，节点数达到上限时不再创建新网段
+     *
+     * @param decayRate 每毫秒的衰减率(ln2 / 半衰期)
+     */
+    public void record(InetAddress address, double successes, double failures, long now,
+                       double decayRate, int maxNodes) {
+        byte[] bytes = address.getAddress();
+        long high = keyHigh(bytes);
+        long low = keyLow(bytes);
+
+        for (int length : levels(bytes)) {
+            Node node = find(high, low, length);
+            if (node == null) {
+                node = insert(high, low, length, maxNodes);
+                if (node == null) {
+                    continue;
+                }
+            }
+
+            while (true) {
+                Score current = node.score;
+                Score updated;
+                if (current == null) {
+                    updated = new Score(successes, failures, now);
+                } else {
+                    double factor = current.factor(now, decayRate);
+                    updated = new Score(current.successes * factor + successes,
+                        current.failures * factor + failures, Math.max(now, current.updatedAt));
+                }
+                if (SCORE.compareAndSet(node, current, updated)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询地址所在的各级网段
+     */
+    public Assessment assess(InetAddress address, long now, double decayRate) {
+        byte[] bytes = address.getAddress();
+        long high = keyHigh(bytes);
+        long low = keyLow(bytes);
+        int hostLength = levels(bytes)[0];
+        int offset = bytes.length == 4 ? IPV4_OFFSET : 0;
+
+        double hostSuccesses = 0D;
+        double hostFailures = 0D;
+        double worstNet = 0D;
+        int worstLength = -1;
+
+        Node node = root;
+        while (node != null && matches(node, high, low)) {
+            Score score = node.score;
+            if (score != null) {
+                double factor = score.factor(now, decayRate);
+                double successes = score.successes * factor;
+                double failures = score.failures * factor;
+                if (worstLength < 0 || failures - successes > worstNet) {
+                    worstNet = failures - successes;
+                    worstLength = node.length - offset;
+                }
+                if (node.length == hostLength) {
+                    hostSuccesses = successes;
+                    hostFailures = failures;
+                }
+            }
+            if (node.length >= hostLength) {
+                break;
+            }
+            node = bit(high, low, node.length) ? node.one : node.zero;
+        }
+
+        return new Assessment(hostSuccesses, hostFailures, worstNet, worstLength);
+    }
+
+    /**
+     * 查找前缀完全相同的节点(不加锁)
+     */
+    private Node find(long high, long low, int length) {
+        Node node = root;
+        while (node != null && node.length <= length && matches(node, high, low)) {
+            if (node.length == length) {
+                return node;
+            }
+            node = bit(high, low, node.length) ? node.one : node.zero;
+        }
+        return null;
+    }
+
+    /**
+     * 创建前缀节点，已存在时直接返回；必要时拆分压缩的路径
+     */
+    private synchronized Node insert(long high, long low, int length, int maxNodes) {
+        Node existing = find(high, low, length);
+        if (existing != null) {
+            return existing;
+        }
+        if (nodeCount >= maxNodes) {
+            return null;
+        }
+        return insertInto(root, high, low, length);
+    }
+
+    private Node insertInto(Node start, long high, long low, int length) {
+        Node parent = start;
+        while (true) {
+            if (parent.length == length) {
+                return parent;
+            }
+
+            boolean bit = bit(high, low, parent.length);
+            Node child = bit ? parent.one : parent.zero;
+            if (child == null) {
+                Node created = new Node(high, low, length);
+                nodeCount++;
+                setChild(parent, bit, created);
+                return created;
+            }
+
+            int common = Math.min(commonPrefix(high, low, child.high, child.low), Math.min(child.length, length));
+            if (common == child.length) {
+                parent = child;
+                continue;
+            }
+
+            // 新前缀与子节点在 common 位之后分叉: 先构造好新的子树，再替换父节点的引用
+            Node created = new Node(high, low, length);
+            Node replacement;
+            if (common == length) {
+                setChild(created, bit(child.high, child.low, length), child);
+                replacement = created;
+                nodeCount++;
+            } else {
+                Node branch = new Node(high, low, common);
+                setChild(branch, bit(child.high, child.low, common), child);
+                setChild(branch, bit(high, low, common), created);
+                replacement = branch;
+                nodeCount += 2;
+            }
+            setChild(parent, bit, replacement);
+            return created;
+        }
+    }
+
+    /**
+     * 丢弃衰减到阈值以下的网段，重建一棵只含剩余网段的新树后替换
+     * 重建期间对旧树的分数更新可能丢失，对衰减的统计没有影响
+     *
+     * @return 剩余的网段数量
+     */
+    public synchronized int prune(long now, double decayRate, double threshold) {
+        Node rebuilt = new Node(0L, 0L, 0);
+        nodeCount = 0;
+        int kept = copyLive(root, rebuilt, now, decayRate, threshold);
+        root = rebuilt;
+        return kept;
+    }
+
+    private int copyLive(Node node, Node target, long now, double decayRate, double threshold) {
+        if (node == null) {
+            return 0;
+        }
+        int kept = 0;
+        Score score = node.score;
+        if (score != null) {
+            double factor = score.factor(now, decayRate);
+            if (Math.max(score.successes, score.failures) * factor >= threshold) {
+                insertInto(target, node.high, node.low, node.length).score = score;
+                kept++;
+            }
+        }
+        return kept + copyLive(node.zero, target, now, decayRate, threshold)
+            + copyLive(node.one, target, now, decayRate, threshold);
+    }
+
+    /**
+     * 获取节点数量(包括只用于分叉的节点)
+     */
+    public int size() {
+        return nodeCount;
+    }
+
+    /**
+     * 格式化地址所在的网段，例如 203.0.113.0/24
+     *
+     * @param length 按地址本身位数的前缀长度
+     */
+    public static String formatPrefix(InetAddress address, int length) {
+        byte[] bytes = address.getAddress();
+        for (int i = 0; i < bytes.length; i++) {
+            int keep = length - i * 8;
+            if (keep <= 0) {
+                bytes[i] = 0;
+            } else if (keep < 8) {
+                bytes[i] &= (byte) (0xFF << (8 - keep));
+            }
+        }
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress() + "/" + length;
+        } catch (UnknownHostException e) {
+            return address.getHostAddress() + "/" + length;
+        }
+    }
+
+    private static int[] levels(byte[] bytes) {
+        return bytes.length == 4 ? IPV4_LEVELS : IPV6_LEVELS;
+    }
+
+    private static long keyHigh(byte[] bytes) {
+        return bytes.length == 4 ? 0L : readLong(bytes, 0);
+    }
+
+    private static long keyLow(byte[] bytes) {
+        if (bytes.length == 4) {
+            return IPV4_MAPPED | (readInt(bytes) & 0xFFFFFFFFL);
+        }
+        return readLong(bytes, 8);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0L;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFFL);
+        }
+        return value;
+    }
+
+    private static int readInt(byte[] bytes) {
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+
+    private static boolean matches(Node node, long high, long low) {
+        return maskHigh(high, node.length) == node.high && maskLow(low, node.length) == node.low;
+    }
+
+    /**
+     * 第 index 位(从最高位开始)
+     */
+    private static boolean bit(long high, long low, int index) {
+        return index < 64 ? ((high >>> (63 - index)) & 1L) != 0L : ((low >>> (127 - index)) & 1L) != 0L;
+    }
+
+    private static int commonPrefix(long high, long low, long otherHigh, long otherLow) {
+        if (high != otherHigh) {
+            return Long.numberOfLeadingZeros(high ^ otherHigh);
+        }
+        return low == otherLow ? KEY_BITS : 64 + Long.numberOfLeadingZeros(low ^ otherLow);
+    }
+
+    private static long maskHigh(long high, int length) {
+        if (length >= 64) {
+            return high;
+        }
+        return length == 0 ? 0L : high & (-1L << (64 - length));
+    }
+
+    private static long maskLow(long low, int length) {
+        if (length >= KEY_BITS) {
+            return low;
+        }
+        return length <= 64 ? 0L : low & (-1L << (KEY_BITS - length));
+    }
+
+    private static void setChild(Node parent, boolean bit, Node child) {
+        if (bit) {
+            parent.one = child;
+        } else {
+            parent.zero = child;
+        }
+    }
+}
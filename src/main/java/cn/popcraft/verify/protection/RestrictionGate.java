@@ -0,0 +1,140 @@
+package cn.popcraft.verify.protection;
+
+import org.bukkit.entity.Player;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 未验证玩家标记
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 以实体 ID 为键的开放寻址表记录尚未完成验证的玩家
+ * - 为高频事件(移动、聊天等)提供通常只读取一个 int 的判断
+ *
+ * 实体 ID 在玩家在线期间不会改变，但由服务器与所有实体共用的计数器递增分配，
+ * 因此不能直接作为数组下标。表的容量只跟随同时未验证的玩家数量(装载率不超过一半)，
+ * 与服务器运行时间无关；玩家减少时保留已扩容的表，不会反复分配。
+ * 修改操作加锁，读取不加锁，可以在任意线程进行(例如异步聊天事件)。
+ * 加入时直接写入空槽；移除时复制出不含该玩家的新表再发布，读取方不会漏看其他玩家。
+ */
+public class RestrictionGate {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // 保存 实体 ID + 1，0 表示空槽
+    private volatile AtomicIntegerArray keys = new AtomicIntegerArray(MIN_CAPACITY);
+    private int restrictedCount;
+
+    /**
+     * 玩家是否仍在等待验证
+     */
+    public boolean isRestricted(Player player) {
+        return isRestricted(player.getEntityId());
+    }
+
+    /**
+     * 实体 ID 对应的玩家是否仍在等待验证
+     */
+    public boolean isRestricted(int entityId) {
+        AtomicIntegerArray table = keys;
+        int key = entityId + 1;
+        int mask = table.length() - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            int current = table.get(i);
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 标记玩家为未验证
+     */
+    public synchronized void restrict(Player player) {
+        int key = player.getEntityId() + 1;
+        if (indexOf(keys, key) >= 0) {
+            return;
+        }
+
+        if ((restrictedCount + 1) * 2 > keys.length()) {
+            // 按两倍扩容，复制完成后再发布新表
+            keys = copy(keys, keys.length() * 2, 0);
+        }
+        insert(keys, key);
+        restrictedCount++;
+    }
+
+    /**
+     * 解除玩家的限制(验证成功或离开服务器)
+     */
+    public synchronized void release(Player player) {
+        int key = player.getEntityId() + 1;
+        if (indexOf(keys, key) < 0) {
+            return;
+        }
+
+        // 原地删除需要移动后续元素，读取方可能暂时看不到它们，因此复制一份(容量不变)
+        keys = copy(keys, keys.length(), key);
+        restrictedCount--;
+    }
+
+    /**
+     * 获取未验证玩家数量
+     */
+    public synchronized int getRestrictedCount() {
+        return restrictedCount;
+    }
+
+    /**
+     * 解除所有限制
+     */
+    public synchronized void clear() {
+        keys = new AtomicIntegerArray(keys.length());
+        restrictedCount = 0;
+    }
+
+    private static int slot(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int indexOf(AtomicIntegerArray table, int key) {
+        int mask = table.length() - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            int current = table.get(i);
+            if (current == key) {
+                return i;
+            }
+            if (current == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private static void insert(AtomicIntegerArray table, int key) {
+        int mask = table.length() - 1;
+        int i = slot(key, mask);
+        while (table.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        table.set(i, key);
+    }
+
+    /**
+     * 复制到指定容量的新表，跳过 excluded(为 0 时全部保留)
+     */
+    private static AtomicIntegerArray copy(AtomicIntegerArray table, int capacity, int excluded) {
+        AtomicIntegerArray copied = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < table.length(); i++) {
+            int key = table.get(i);
+            if (key != 0 && key != excluded) {
+                insert(copied, key);
+            }
+        }
+        return copied;
+    }
+}
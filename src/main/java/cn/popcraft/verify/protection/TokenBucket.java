@@ -0,0 +1,64 @@
+package cn.popcraft.verify.protection;
+
+/**
+ * 令牌桶
+ * 作者: Popcraft
+ *
+ * 以固定速率补充令牌，桶满后不再增加，每次放行消耗一个令牌。
+ */
+public final class TokenBucket {
+
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+    private volatile long lastUsed;
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param capacity      桶容量(允许的突发数量)
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerNano = ratePerSecond / 1_000_000_000D;
+        this.capacity = Math.max(1D, capacity);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+        this.lastUsed = lastRefill;
+    }
+
+    /**
+     * 尝试获取一个令牌
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        lastUsed = now;
+        refill(now);
+        if (tokens >= 1D) {
+            tokens -= 1D;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 归还一个令牌(获取后请求被其他限制拒绝时)
+     */
+    public synchronized void release() {
+        tokens = Math.min(capacity, tokens + 1D);
+    }
+
+    /**
+     * 是否已经空闲超过指定时间，可以被回收
+     */
+    public boolean isIdle(long now, long idleNanos) {
+        return now - lastUsed > idleNanos;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * ratePerNano);
+            lastRefill = now;
+        }
+    }
+}
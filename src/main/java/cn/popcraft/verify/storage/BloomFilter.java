@@ -0,0 +1,163 @@
+package cn.popcraft.verify.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * UUID 布隆过滤器
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 判断一个 UUID 是否可能已加入过(不存在时一定返回 false)
+ * - 写入和读取二进制格式，用于在启动时直接恢复
+ *
+ * 位数组大小为 2 的幂，按约 1% 的误判率计算位数和哈希次数。
+ * 添加和查询都不加锁，可在任意线程调用；不支持删除，由使用方定期重建。
+ */
+public final class BloomFilter {
+
+    private static final int MAGIC = 0x56424C4D;   // "VBLM"
+    private static final int FORMAT_VERSION = 1;
+
+    // 每个元素约 9.6 位，对应 1% 的误判率
+    private static final double BITS_PER_ENTRY = 9.6D;
+    private static final int HASHES = 7;
+    private static final int MIN_WORDS = 16;
+    private static final int MAX_WORDS = 1 << 26;   // 512 MB 位数组上限
+
+    private final AtomicLongArray words;
+    private final long bitMask;
+    private final long capacity;
+    private final AtomicLong count;
+
+    private BloomFilter(AtomicLongArray words, long capacity, long count) {
+        this.words = words;
+        this.bitMask = words.length() * 64L - 1L;
+        this.capacity = capacity;
+        this.count = new AtomicLong(count);
+    }
+
+    /**
+     * 按预计元素数量创建
+     */
+    public static BloomFilter create(long expectedEntries) {
+        long bits = (long) Math.ceil(Math.max(1L, expectedEntries) * BITS_PER_ENTRY);
+        int wordCount = MIN_WORDS;
+        while (wordCount < MAX_WORDS && wordCount * 64L < bits) {
+            wordCount <<= 1;
+        }
+        return new BloomFilter(new AtomicLongArray(wordCount), (long) (wordCount * 64L / BITS_PER_ENTRY), 0L);
+    }
+
+    /**
+     * 添加 UUID
+     */
+    public void put(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ id.getLeastSignificantBits() * 0x9E3779B97F4A7C15L);
+        long h2 = mix(id.getLeastSignificantBits() + 0xC2B2AE3D27D4EB4FL) | 1L;
+
+        boolean changed = false;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            int index = (int) (bit >>> 6);
+            long flag = 1L << bit;
+            long current;
+            while (((current = words.get(index)) & flag) == 0L) {
+                if (words.compareAndSet(index, current, current | flag)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        // 所有位都已置位时视为重复添加
+        if (changed) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * UUID 是否可能已添加过
+     */
+    public boolean mightContain(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ id.getLeastSignificantBits() * 0x9E3779B97F4A7C15L);
+        long h2 = mix(id.getLeastSignificantBits() + 0xC2B2AE3D27D4EB4FL) | 1L;
+
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64 位混合函数(SplitMix64 的最终步骤)
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * 已添加的元素数量(估计值)
+     */
+    public long size() {
+        return count.get();
+    }
+
+    /**
+     * 在误判率不明显上升的前提下可容纳的元素数量
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * 位数组占用的字节数
+     */
+    public long sizeInBytes() {
+        return words.length() * 8L;
+    }
+
+    /**
+     * 写入二进制格式
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(count.get());
+        out.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    /**
+     * 读取二进制格式
+     *
+     * @throws IOException 文件损坏或格式不符
+     */
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("格式不符");
+        }
+        long count = in.readLong();
+        int wordCount = in.readInt();
+        if (wordCount < MIN_WORDS || wordCount > MAX_WORDS || Integer.bitCount(wordCount) != 1 || count < 0L) {
+            throw new IOException("大小无效");
+        }
+
+        AtomicLongArray words = new AtomicLongArray(wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            words.set(i, in.readLong());
+        }
+        return new BloomFilter(words, (long) (wordCount * 64L / BITS_PER_ENTRY), count);
+    }
+}
@@ -0,0 +1,530 @@
+package cn.popcraft.verify.storage;
+
+import cn.popcraft.verify.VerifyPlugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已验证玩家存储
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 以追加日志的形式持久化已验证玩家
+ * - 在内存中维护 UUID → 验证记录 的索引
+ * - 由后台线程写入磁盘，不阻塞主线程
+ * - 作为跨服同步的本地缓存，合并其他服务器广播的验证和撤销
+ * - 以布隆过滤器记录出现过的 UUID，从未验证过的玩家不必查询索引
+ *
+ * 索引在后台线程中加载。关闭时过滤器保存到 verified.bloom，并记下日志文件的长度和修改时间，
+ * 启动时日志未变化则直接使用保存的过滤器: 加载完成前，过滤器判定为不存在的玩家立即返回，
+ * 其余查询在异步线程中等待加载完成；主线程(包括 Folia 的区域线程)从不等待，按已加载的部分回答。
+ * 过滤器不支持删除，元素超出容量或撤销较多时在写入线程中重建。
+ *
+ * 日志格式(每行一条):
+ * - V &lt;uuid&gt; &lt;验证时间戳&gt; &lt;IP&gt;  记录一次验证
+ * - R &lt;uuid&gt;                         撤销验证记录
+ */
+public class VerifiedPlayerStore {
+
+    private static final String FILE_NAME = "verified.log";
+    private static final String FILTER_FILE_NAME = "verified.bloom";
+    private static final int MIN_FILTER_ENTRIES = 4096;
+    private static final String NO_IP = "-";
+
+    // 日志行数超过有效记录数的倍数时在启动时压缩
+    private static final int COMPACT_RATIO = 2;
+    private static final int COMPACT_MIN_LINES = 1024;
+
+    private final VerifyPlugin plugin;
+    private final File file;
+    private final Map<UUID, VerifiedEntry> index;
+    private final BlockingQueue<String> writeQueue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final File filterFile;
+    private volatile BloomFilter filter;
+    private volatile BloomFilter rebuilding;
+    private volatile boolean filterComplete;
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private final AtomicLong removedSinceRebuild = new AtomicLong();
+    private final LongAdder filterNegatives = new LongAdder();
+
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final Set<UUID> revokedDuringLoad = ConcurrentHashMap.newKeySet();
+    private volatile boolean loading;
+    private Thread loaderThread;
+
+    /**
+     * 验证记录
+     */
+    public static final class VerifiedEntry {
+        private final long verifiedAt;
+        private final String lastIp;
+
+        public VerifiedEntry(long verifiedAt, String lastIp) {
+            this.verifiedAt = verifiedAt;
+            this.lastIp = lastIp;
+        }
+
+        public long getVerifiedAt() { return verifiedAt; }
+        public String getLastIp() { return lastIp; }
+    }
+
+    public VerifiedPlayerStore(VerifyPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), FILE_NAME);
+        this.index = new ConcurrentHashMap<>();
+        this.writeQueue = new LinkedBlockingQueue<>();
+        this.filterFile = new File(plugin.getDataFolder(), FILTER_FILE_NAME);
+    }
+
+    /**
+     * 恢复过滤器，并在后台线程中加载验证记录，加载完成后启动写入线程
+     */
+    public void load() {
+        BloomFilter saved = readFilter();
+        filter = saved != null ? saved : BloomFilter.create(MIN_FILTER_ENTRIES);
+        filterComplete = saved != null;
+
+        loading = true;
+        loaderThread = new Thread(this::loadIndex, "Verify-Store-Loader");
+        loaderThread.setDaemon(true);
+        loaderThread.start();
+    }
+
+    /**
+     * 读取日志并合并到索引(加载线程)
+     *
+     * 加载期间新增的记录已在索引中，比日志中的记录更新，不会被覆盖；加载期间撤销的玩家直接跳过。
+     * 撤销先登记再删除，合并时在 compute 中检查登记，两者对同一个键互斥，撤销不会被合并覆盖。
+     */
+    private void loadIndex() {
+        long start = System.nanoTime();
+        Map<UUID, VerifiedEntry> entries = new HashMap<>();
+        int lines = 0;
+
+        try {
+            if (file.exists()) {
+                try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines++;
+                        applyLine(entries, line);
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().severe("无法读取验证记录: " + e.getMessage());
+                }
+            }
+
+            for (Map.Entry<UUID, VerifiedEntry> entry : entries.entrySet()) {
+                VerifiedEntry logged = entry.getValue();
+                index.compute(entry.getKey(), (playerId, current) ->
+                    current != null ? current : revokedDuringLoad.contains(playerId) ? null : logged);
+            }
+
+            if (lines > COMPACT_MIN_LINES && lines > index.size() * COMPACT_RATIO) {
+                compact();
+            }
+
+            // 按实际记录数重建，去掉上次运行中撤销的玩家
+            rebuildFilter();
+            filterComplete = true;
+        } finally {
+            loading = false;
+            revokedDuringLoad.clear();
+            loaded.countDown();
+        }
+
+        startWriter();
+
+        plugin.getLogger().info("已加载 " + index.size() + " 条验证记录 ("
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
+    }
+
+    /**
+     * 等待索引加载完成，主线程上不等待
+     *
+     * @return 索引是否已加载完成
+     */
+    private boolean awaitLoaded() {
+        if (loaded.getCount() == 0L) {
+            return true;
+        }
+        if (plugin.getServer().isPrimaryThread()) {
+            return false;
+        }
+        try {
+            loaded.await();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 解析单行日志，损坏的行直接跳过
+     */
+    private static void applyLine(Map<UUID, VerifiedEntry> index, String line) {
+        String[] parts = line.split(" ");
+        try {
+            if (parts.length >= 4 && "V".equals(parts[0])) {
+                UUID playerId = UUID.fromString(parts[1]);
+                long verifiedAt = Long.parseLong(parts[2]);
+                String ip = NO_IP.equals(parts[3]) ? null : parts[3];
+                index.put(playerId, new VerifiedEntry(verifiedAt, ip));
+            } else if (parts.length >= 2 && "R".equals(parts[0])) {
+                index.remove(UUID.fromString(parts[1]));
+            }
+        } catch (IllegalArgumentException ignored) {
+            // 写入中断导致的半行记录
+        }
+    }
+
+    /**
+     * 将当前索引重写为精简日志
+     */
+    private void compact() {
+        File temp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<UUID, VerifiedEntry> entry : index.entrySet()) {
+                writer.write(formatVerified(entry.getKey(), entry.getValue()));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("压缩验证记录失败: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("替换验证记录文件失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 启动后台写入线程
+     */
+    private void startWriter() {
+        running = true;
+        writerThread = new Thread(this::writeLoop, "Verify-Store-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 后台写入循环，每次把队列中积压的记录一次性写入，需要时重建过滤器
+     */
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>();
+
+        while (running || !writeQueue.isEmpty()) {
+            if (rebuildRequested.get()) {
+                rebuildFilter();
+            }
+            try {
+                String first = writeQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writeQueue.drainTo(batch);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<String> batch) {
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String line : batch) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("写入验证记录失败: " + e.getMessage());
+        }
+    }
+
+    private static String formatVerified(UUID playerId, VerifiedEntry entry) {
+        String ip = entry.getLastIp() == null ? NO_IP : entry.getLastIp();
+        return "V " + playerId + " " + entry.getVerifiedAt() + " " + ip;
+    }
+
+    /**
+     * 记录玩家验证成功
+     */
+    public VerifiedEntry markVerified(UUID playerId, String ip) {
+        VerifiedEntry entry = new VerifiedEntry(System.currentTimeMillis(), ip);
+        index.put(playerId, entry);
+        addToFilter(playerId);
+        writeQueue.offer(formatVerified(playerId, entry));
+        return entry;
+    }
+
+    /**
+     * 撤销玩家的验证记录
+     *
+     * @return 是否存在该玩家的记录(加载期间按过滤器判断日志中是否可能有记录)
+     */
+    public boolean revoke(UUID playerId) {
+        boolean pending = loading;
+        if (pending) {
+            // 日志中可能有该玩家的记录，先登记再删除，合并时跳过
+            revokedDuringLoad.add(playerId);
+        }
+        boolean removed = index.remove(playerId) != null;
+        if (!removed && !pending) {
+            return false;
+        }
+        writeQueue.offer("R " + playerId);
+        noteRemoval();
+        return removed || !filterComplete || filter.mightContain(playerId);
+    }
+
+    /**
+     * 合并其他服务器广播的验证记录，只有比本地记录更新时才写入
+     *
+     * @return 本地记录是否被更新
+     */
+    public boolean mergeVerified(UUID playerId, long verifiedAt, String ip) {
+        VerifiedEntry entry = new VerifiedEntry(verifiedAt, ip);
+        VerifiedEntry current = index.merge(playerId, entry,
+            (old, received) -> received.getVerifiedAt() > old.getVerifiedAt() ? received : old);
+        if (current != entry) {
+            return false;
+        }
+        addToFilter(playerId);
+        writeQueue.offer(formatVerified(playerId, entry));
+        return true;
+    }
+
+    /**
+     * 合并其他服务器广播的撤销，撤销之后才产生的验证记录保留
+     *
+     * @return 本地记录是否被撤销
+     */
+    public boolean mergeRevoked(UUID playerId, long revokedAt) {
+        if (loading) {
+            // 日志中的记录尚未合并，无法比较时间，按撤销处理
+            revoke(playerId);
+            return true;
+        }
+        VerifiedEntry current = index.get(playerId);
+        if (current == null || current.getVerifiedAt() > revokedAt || !index.remove(playerId, current)) {
+            return false;
+        }
+        writeQueue.offer("R " + playerId);
+        noteRemoval();
+        return true;
+    }
+
+    /**
+     * 获取玩家的验证记录，索引未加载完成时在异步线程中等待，主线程上只查询已加载的部分
+     */
+    public VerifiedEntry getEntry(UUID playerId) {
+        awaitLoaded();
+        return index.get(playerId);
+    }
+
+    /**
+     * 检查玩家是否已验证
+     *
+     * @param expireMillis 记录有效期(毫秒)，0 表示永久有效
+     * @param requiredIp   需要匹配的 IP，为 null 时不检查
+     */
+    public boolean isVerified(UUID playerId, long expireMillis, String requiredIp) {
+        // 从未验证过的玩家(机器人大量加入时的绝大多数连接)不查询索引，也不等待加载
+        if (filterComplete && !filter.mightContain(playerId)) {
+            filterNegatives.increment();
+            return false;
+        }
+
+        // 主线程上不等待加载: 记录尚未加载的玩家这次需要重新验证
+        awaitLoaded();
+        VerifiedEntry entry = index.get(playerId);
+        if (entry == null) {
+            return false;
+        }
+
+        if (expireMillis > 0 && System.currentTimeMillis() - entry.getVerifiedAt() > expireMillis) {
+            return false;
+        }
+
+        return requiredIp == null || requiredIp.equals(entry.getLastIp());
+    }
+
+    /**
+     * 把 UUID 加入过滤器，正在重建时同时加入新过滤器
+     */
+    private void addToFilter(UUID playerId) {
+        BloomFilter current = filter;
+        current.put(playerId);
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(playerId);
+        }
+        // 重建在读取 filter 之后完成时，新过滤器可能漏掉这个 UUID
+        BloomFilter latest = filter;
+        if (latest != current) {
+            latest.put(playerId);
+        }
+
+        if (latest.size() > latest.capacity()) {
+            rebuildRequested.set(true);
+        }
+    }
+
+    /**
+     * 记录一次撤销，撤销数量达到容量的一半时重建过滤器
+     */
+    private void noteRemoval() {
+        if (removedSinceRebuild.incrementAndGet() > filter.capacity() / 2) {
+            rebuildRequested.set(true);
+        }
+    }
+
+    /**
+     * 按当前索引重建过滤器，容量为记录数的两倍(加载线程或写入线程)
+     */
+    private void rebuildFilter() {
+        rebuildRequested.set(false);
+        BloomFilter next = BloomFilter.create(Math.max(MIN_FILTER_ENTRIES, index.size() * 2L));
+        rebuilding = next;
+        for (UUID playerId : index.keySet()) {
+            next.put(playerId);
+        }
+        removedSinceRebuild.set(0L);
+        filter = next;
+        rebuilding = null;
+    }
+
+    /**
+     * 读取保存的过滤器，日志在保存之后有变化或文件损坏时返回 null
+     */
+    private BloomFilter readFilter() {
+        if (!filterFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filterFile.toPath())))) {
+            long logLength = in.readLong();
+            long logModified = in.readLong();
+            if (logLength != file.length() || logModified != file.lastModified()) {
+                return null;
+            }
+            return BloomFilter.readFrom(in);
+        } catch (IOException e) {
+            plugin.getLogger().warning("无法读取验证记录过滤器，将在加载后重建: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 保存过滤器和当前日志文件的长度、修改时间(写入线程结束后)
+     */
+    private void saveFilter() {
+        BloomFilter current = filter;
+        if (current == null || !filterComplete) {
+            return;
+        }
+        File temp = new File(filterFile.getParentFile(), FILTER_FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            current.writeTo(out);
+        } catch (IOException e) {
+            plugin.getLogger().warning("保存验证记录过滤器失败: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), filterFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("替换验证记录过滤器失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取过滤器直接判定为未验证的查询次数
+     */
+    public long getFilterNegativeCount() {
+        return filterNegatives.sum();
+    }
+
+    /**
+     * 获取过滤器位数组占用的字节数
+     */
+    public long getFilterBytes() {
+        return filter.sizeInBytes();
+    }
+
+    /**
+     * 获取已记录的玩家数量
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 等待加载完成，停止写入线程并写入剩余记录，然后保存过滤器
+     */
+    public void close() {
+        if (loaderThread != null) {
+            try {
+                loaderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            loaderThread = null;
+        }
+
+        running = false;
+        if (writerThread != null) {
+            try {
+                writerThread.join(5000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+
+        if (writeQueue.isEmpty()) {
+            saveFilter();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package cn.popcraft.verify.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预编译消息模板
+ * 作者: Popcraft
+ *
+ * 在加载配置时把消息拆分为固定文本和占位符片段，颜色代码已在编译前转换。
+ * 渲染时只需按顺序拼接到线程内复用的 StringBuilder 中，不再重复执行 replace。
+ *
+ * 支持的占位符: {code} {player} {attempts}
+ */
+public final class MessageTemplate {
+
+    /**
+     * 占位符
+     */
+    public enum Placeholder {
+        CODE("{code}"),
+        PLAYER("{player}"),
+        ATTEMPTS("{attempts}");
+
+        private final String token;
+
+        Placeholder(String token) {
+            this.token = token;
+        }
+
+        public String getToken() { return token; }
+    }
+
+    private static final Placeholder[] PLACEHOLDERS = Placeholder.values();
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    // literals 比 placeholders 多一个元素: literal[0] ph[0] literal[1] ... ph[n-1] literal[n]
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, Placeholder[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 编译单条消息
+     */
+    public static MessageTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+
+        int start = 0;
+        int index = 0;
+        while (index < text.length()) {
+            Placeholder matched = text.charAt(index) == '{' ? matchAt(text, index) : null;
+            if (matched != null) {
+                literals.add(text.substring(start, index));
+                placeholders.add(matched);
+                index += matched.getToken().length();
+                start = index;
+            } else {
+                index++;
+            }
+        }
+        literals.add(text.substring(start));
+
+        return new MessageTemplate(literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]));
+    }
+
+    /**
+     * 编译多条消息
+     */
+    public static List<MessageTemplate> compileAll(List<String> lines) {
+        List<MessageTemplate> templates = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            templates.add(compile(line));
+        }
+        return Collections.unmodifiableList(templates);
+    }
+
+    private static Placeholder matchAt(String text, int index) {
+        for (Placeholder placeholder : PLACEHOLDERS) {
+            if (text.startsWith(placeholder.getToken(), index)) {
+                return placeholder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 是否不含占位符
+     */
+    public boolean isConstant() {
+        return placeholders.length == 0;
+    }
+
+    /**
+     * 渲染消息
+     *
+     * @param code       验证码，为 null 时保留 {code} 原文
+     * @param playerName 玩家名称，为 null 时保留 {player} 原文
+     * @param attempts   剩余尝试次数
+     */
+    public String render(String code, String playerName, int attempts) {
+        if (placeholders.length == 0) {
+            return literals[0];
+        }
+
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        builder.ensureCapacity(literalLength + 32);
+        appendTo(builder, code, playerName, attempts);
+        return builder.toString();
+    }
+
+    /**
+     * 将渲染结果追加到指定的 StringBuilder
+     * 值为 null 的占位符保留原文，与逐个 replace 的结果相同
+     */
+    public void appendTo(StringBuilder builder, String code, String playerName, int attempts) {
+        builder.append(literals[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            switch (placeholders[i]) {
+                case CODE:
+                    builder.append(code != null ? code : Placeholder.CODE.getToken());
+                    break;
+                case PLAYER:
+                    builder.append(playerName != null ? playerName : Placeholder.PLAYER.getToken());
+                    break;
+                case ATTEMPTS:
+                    builder.append(attempts);
+                    break;
+            }
+            builder.append(literals[i + 1]);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package cn.popcraft.verify.utils;
+
+/**
+ * 验证码的紧凑表示
+ * 作者: Popcraft
+ *
+ * 把最多 18 个可打印 ASCII 字符(0x21 - 0x7E)的验证码编码为两个 long:
+ * 每个字符占 7 位，前 9 个字符存入 high，后 9 个字符存入 low。
+ * 编码时统一转换为大写，因此比较时不区分大小写。
+ *
+ * 编码直接读取输入中去掉首尾空白后的区间，不会创建新的字符串；
+ * 比较只做异或和按位或，耗时与验证码内容无关。
+ */
+public final class PackedCode {
+
+    /**
+     * 可编码的最大长度
+     */
+    public static final int MAX_LENGTH = 18;
+
+    /**
+     * 输入为空、过长或含有无法编码的字符时的编码结果。
+     * 有效编码的最高位总是 0，不会与之相同
+     */
+    public static final long INVALID = -1L;
+
+    private static final int CHARS_PER_LONG = 9;
+    private static final int BITS_PER_CHAR = 7;
+    private static final long CHAR_MASK = (1L << BITS_PER_CHAR) - 1;
+
+    private PackedCode() {
+    }
+
+    /**
+     * 字符是否可以编码(大小写转换前)
+     */
+    public static boolean isEncodable(char c) {
+        return c >= 0x21 && c <= 0x7E;
+    }
+
+    /**
+     * 验证码整体是否可以编码
+     */
+    public static boolean isPackable(CharSequence code) {
+        int start = trimStart(code);
+        int end = trimEnd(code, start);
+        return packHigh(code, start, end) != INVALID && packLow(code, start, end) != INVALID;
+    }
+
+    /**
+     * 去掉开头空白后的起始位置
+     */
+    public static int trimStart(CharSequence input) {
+        int start = 0;
+        while (start < input.length() && input.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * 去掉末尾空白后的结束位置(不包含)
+     */
+    public static int trimEnd(CharSequence input, int start) {
+        int end = input.length();
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 编码区间 [start, end) 中的前 9 个字符
+     */
+    public static long packHigh(CharSequence input, int start, int end) {
+        int length = end - start;
+        if (length <= 0 || length > MAX_LENGTH) {
+            return INVALID;
+        }
+        return packPart(input, start, Math.min(end, start + CHARS_PER_LONG));
+    }
+
+    /**
+     * 编码区间 [start, end) 中第 10 到第 18 个字符，不足 10 个字符时为 0
+     */
+    public static long packLow(CharSequence input, int start, int end) {
+        int length = end - start;
+        if (length <= 0 || length > MAX_LENGTH) {
+            return INVALID;
+        }
+        return length <= CHARS_PER_LONG ? 0L : packPart(input, start + CHARS_PER_LONG, end);
+    }
+
+    private static long packPart(CharSequence input, int from, int to) {
+        long packed = 0L;
+        for (int i = from; i < to; i++) {
+            char c = input.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (!isEncodable(c)) {
+                return INVALID;
+            }
+            packed = (packed << BITS_PER_CHAR) | c;
+        }
+        return packed;
+    }
+
+    /**
+     * 比较两个编码，耗时与内容无关
+     */
+    public static boolean matches(long high, long low, long otherHigh, long otherLow) {
+        return ((high ^ otherHigh) | (low ^ otherLow)) == 0L;
+    }
+
+    /**
+     * 还原为字符串(用于显示)
+     */
+    public static String decode(long high, long low) {
+        StringBuilder builder = new StringBuilder(MAX_LENGTH);
+        appendPart(builder, high);
+        appendPart(builder, low);
+        return builder.toString();
+    }
+
+    private static void appendPart(StringBuilder builder, long packed) {
+        // 最高位的非零字符之前都是填充
+        int shift = (CHARS_PER_LONG - 1) * BITS_PER_CHAR;
+        while (shift >= 0 && ((packed >>> shift) & CHAR_MASK) == 0) {
+            shift -= BITS_PER_CHAR;
+        }
+        for (; shift >= 0; shift -= BITS_PER_CHAR) {
+            builder.append((char) ((packed >>> shift) & CHAR_MASK));
+        }
+    }
+}
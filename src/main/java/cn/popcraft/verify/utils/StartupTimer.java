@@ -0,0 +1,89 @@
+package cn.popcraft.verify.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 插件启动计时
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 记录启用插件时每个阶段的耗时
+ * - 生成一行启动耗时摘要，并提供给指标导出
+ *
+ * 只在启用插件的线程中使用。
+ */
+public final class StartupTimer {
+
+    private final long startedAt = System.nanoTime();
+    private long phaseStartedAt = startedAt;
+    private long finishedAt;
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * 一个阶段的耗时
+     */
+    public static final class Phase {
+        private final String name;
+        private final long nanos;
+
+        private Phase(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+
+        public String getName() { return name; }
+        public long getNanos() { return nanos; }
+    }
+
+    /**
+     * 结束当前阶段，下一阶段从现在开始计时
+     */
+    public void phase(String name) {
+        long now = System.nanoTime();
+        phases.add(new Phase(name, now - phaseStartedAt));
+        phaseStartedAt = now;
+    }
+
+    /**
+     * 结束计时
+     */
+    public void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    /**
+     * 获取各阶段耗时(按执行顺序)
+     */
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    /**
+     * 获取总耗时(纳秒)
+     */
+    public long getTotalNanos() {
+        return (finishedAt == 0L ? System.nanoTime() : finishedAt) - startedAt;
+    }
+
+    /**
+     * 生成摘要，例如 "启动耗时 12.40 ms (config 1.20 ms, store 0.35 ms)"
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder("启动耗时 ").append(format(getTotalNanos())).append(" (");
+        for (int i = 0; i < phases.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            Phase phase = phases.get(i);
+            builder.append(phase.name).append(' ').append(format(phase.nanos));
+        }
+        return builder.append(')').toString();
+    }
+
+    private static String format(long nanos) {
+        return String.format(Locale.ROOT, "%.2f ms", nanos / 1000000D);
+    }
+}
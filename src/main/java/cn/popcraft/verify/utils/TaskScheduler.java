@@ -0,0 +1,239 @@
+package cn.popcraft.verify.utils;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 任务调度
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 在 Bukkit/Spigot/Paper 上使用 BukkitScheduler(单一主线程)
+ * - 在 Folia 上把玩家相关的任务交给玩家的实体调度器(所在区域的线程)，
+ *   全局任务交给全局区域调度器，异步任务交给异步调度器
+ *
+ * 插件按 Spigot API 编译，Folia 的调度器通过反射调用，方法在创建时解析一次。
+ * 时间单位均为 tick(50 毫秒)。
+ */
+public abstract class TaskScheduler {
+
+    private static final long MILLIS_PER_TICK = 50L;
+
+    /**
+     * 已调度的任务，可用于取消
+     */
+    public interface Task {
+        void cancel();
+    }
+
+    /**
+     * 按当前服务器类型创建调度器
+     */
+    public static TaskScheduler create(Plugin plugin) {
+        if (isFoliaServer()) {
+            try {
+                return new FoliaTaskScheduler(plugin);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("无法初始化 Folia 调度器", e);
+            }
+        }
+        return new BukkitTaskScheduler(plugin);
+    }
+
+    private static boolean isFoliaServer() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 是否运行在 Folia 上
+     */
+    public abstract boolean isFolia();
+
+    /**
+     * 在拥有该玩家的线程上执行任务，玩家已离开时(Folia)任务被丢弃
+     * 非 Folia 服务器上已在主线程时直接执行
+     */
+    public abstract void runForPlayer(Player player, Runnable task);
+
+    /**
+     * 延迟指定 tick 后在拥有该玩家的线程上执行任务
+     */
+    public abstract void runForPlayerLater(Player player, Runnable task, long delayTicks);
+
+    /**
+     * 在全局线程上执行任务(例如以控制台身份执行命令)
+     * 非 Folia 服务器上已在主线程时直接执行
+     */
+    public abstract void runGlobal(Runnable task);
+
+    /**
+     * 在全局线程上定时执行任务
+     */
+    public abstract Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * 在异步线程上定时执行任务
+     */
+    public abstract Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * 单一主线程的调度器
+     */
+    private static final class BukkitTaskScheduler extends TaskScheduler {
+        private final Plugin plugin;
+
+        private BukkitTaskScheduler(Plugin plugin) {
+            this.plugin = plugin;
+        }
+
+        @Override
+        public boolean isFolia() {
+            return false;
+        }
+
+        @Override
+        public void runForPlayer(Player player, Runnable task) {
+            runGlobal(task);
+        }
+
+        @Override
+        public void runForPlayerLater(Player player, Runnable task, long delayTicks) {
+            plugin.getServer().getScheduler().runTaskLater(plugin, task, delayTicks);
+        }
+
+        @Override
+        public void runGlobal(Runnable task) {
+            if (Bukkit.isPrimaryThread()) {
+                task.run();
+            } else {
+                plugin.getServer().getScheduler().runTask(plugin, task);
+            }
+        }
+
+        @Override
+        public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+            BukkitTask handle = plugin.getServer().getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+            return handle::cancel;
+        }
+
+        @Override
+        public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+            BukkitTask handle = plugin.getServer().getScheduler()
+                .runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+            return handle::cancel;
+        }
+    }
+
+    /**
+     * Folia 的区域调度器(反射调用)
+     */
+    private static final class FoliaTaskScheduler extends TaskScheduler {
+        private final Plugin plugin;
+        private final Object globalScheduler;
+        private final Object asyncScheduler;
+        private final Method globalRun;
+        private final Method globalRunAtFixedRate;
+        private final Method asyncRunAtFixedRate;
+        private final Method entityGetScheduler;
+        private final Method entityRun;
+        private final Method entityRunDelayed;
+        private final Method taskCancel;
+
+        private FoliaTaskScheduler(Plugin plugin) throws ReflectiveOperationException {
+            this.plugin = plugin;
+
+            Method getGlobal = Server.class.getMethod("getGlobalRegionScheduler");
+            Method getAsync = Server.class.getMethod("getAsyncScheduler");
+            this.globalScheduler = getGlobal.invoke(plugin.getServer());
+            this.asyncScheduler = getAsync.invoke(plugin.getServer());
+
+            Class<?> globalType = Class.forName("io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler");
+            Class<?> asyncType = Class.forName("io.papermc.paper.threadedregions.scheduler.AsyncScheduler");
+            Class<?> entityType = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler");
+            Class<?> taskType = Class.forName("io.papermc.paper.threadedregions.scheduler.ScheduledTask");
+
+            this.globalRun = globalType.getMethod("run", Plugin.class, Consumer.class);
+            this.globalRunAtFixedRate = globalType.getMethod("runAtFixedRate",
+                Plugin.class, Consumer.class, long.class, long.class);
+            this.asyncRunAtFixedRate = asyncType.getMethod("runAtFixedRate",
+                Plugin.class, Consumer.class, long.class, long.class, TimeUnit.class);
+            this.entityGetScheduler = Entity.class.getMethod("getScheduler");
+            this.entityRun = entityType.getMethod("run", Plugin.class, Consumer.class, Runnable.class);
+            this.entityRunDelayed = entityType.getMethod("runDelayed",
+                Plugin.class, Consumer.class, Runnable.class, long.class);
+            this.taskCancel = taskType.getMethod("cancel");
+        }
+
+        @Override
+        public boolean isFolia() {
+            return true;
+        }
+
+        @Override
+        public void runForPlayer(Player player, Runnable task) {
+            Object scheduler = invoke(entityGetScheduler, player);
+            invoke(entityRun, scheduler, plugin, consumer(task), null);
+        }
+
+        @Override
+        public void runForPlayerLater(Player player, Runnable task, long delayTicks) {
+            Object scheduler = invoke(entityGetScheduler, player);
+            invoke(entityRunDelayed, scheduler, plugin, consumer(task), null, Math.max(1L, delayTicks));
+        }
+
+        @Override
+        public void runGlobal(Runnable task) {
+            invoke(globalRun, globalScheduler, plugin, consumer(task));
+        }
+
+        @Override
+        public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+            Object handle = invoke(globalRunAtFixedRate, globalScheduler, plugin, consumer(task),
+                Math.max(1L, delayTicks), Math.max(1L, periodTicks));
+            return () -> invoke(taskCancel, handle);
+        }
+
+        @Override
+        public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+            Object handle = invoke(asyncRunAtFixedRate, asyncScheduler, plugin, consumer(task),
+                Math.max(1L, delayTicks) * MILLIS_PER_TICK, Math.max(1L, periodTicks) * MILLIS_PER_TICK,
+                TimeUnit.MILLISECONDS);
+            return () -> invoke(taskCancel, handle);
+        }
+
+        /**
+         * Folia 的任务参数为 Consumer<ScheduledTask>，这里忽略任务句柄
+         */
+        private static Consumer<Object> consumer(Runnable task) {
+            return scheduledTask -> task.run();
+        }
+
+        private static Object invoke(Method method, Object target, Object... args) {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package cn.popcraft.verify.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮
+ * 作者: Popcraft
+ *
+ * 按截止时间把任务放入对应的槽位，每次推进只处理当前槽位中到期的任务，
+ * 注册和取消均为 O(1)。截止时间超过一圈的任务会在后续轮次中到期。
+ *
+ * 所有方法都是线程安全的。
+ */
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int mask;
+    private final Timeout<T>[] slots;
+    private long currentTick;
+    private int size;
+
+    /**
+     * 时间轮中的一个任务，可用于取消
+     */
+    public static final class Timeout<T> {
+        private final T value;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private boolean linked;
+
+        private Timeout(T value, long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getValue() { return value; }
+    }
+
+    /**
+     * @param tickMillis 每个槽位代表的时长(毫秒)
+     * @param wheelSize  槽位数量，会向上取整为 2 的幂
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize) {
+        int normalized = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = normalized - 1;
+        this.slots = (Timeout<T>[]) new Timeout[normalized];
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * 注册一个在指定时间到期的任务
+     */
+    public synchronized Timeout<T> schedule(T value, long deadlineMillis) {
+        // 向上取整，保证不会早于截止时间触发
+        long deadlineTick = Math.max(currentTick + 1, (deadlineMillis + tickMillis - 1) / tickMillis);
+        Timeout<T> timeout = new Timeout<>(value, deadlineTick);
+        int index = (int) (deadlineTick & mask);
+
+        timeout.next = slots[index];
+        if (slots[index] != null) {
+            slots[index].prev = timeout;
+        }
+        slots[index] = timeout;
+        timeout.linked = true;
+        size++;
+        return timeout;
+    }
+
+    /**
+     * 取消任务
+     *
+     * @return 任务尚未到期且已被取消时返回 true
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || !timeout.linked) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        int index = (int) (timeout.deadlineTick & mask);
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.linked = false;
+        size--;
+    }
+
+    /**
+     * 推进时间轮到当前时间，并对所有到期任务调用回调
+     *
+     * 回调在锁外执行，可以安全地再次注册或取消任务。
+     */
+    public void advance(long nowMillis, Consumer<T> expired) {
+        Timeout<T> expiredHead = null;
+
+        synchronized (this) {
+            long targetTick = nowMillis / tickMillis;
+            // 落后超过一圈时只需扫描一圈
+            long startTick = Math.max(currentTick + 1, targetTick - mask);
+
+            for (long tick = startTick; tick <= targetTick; tick++) {
+                Timeout<T> node = slots[(int) (tick & mask)];
+                while (node != null) {
+                    Timeout<T> next = node.next;
+                    if (node.deadlineTick <= targetTick) {
+                        unlink(node);
+                        node.next = expiredHead;
+                        expiredHead = node;
+                    }
+                    node = next;
+                }
+            }
+
+            if (targetTick > currentTick) {
+                currentTick = targetTick;
+            }
+        }
+
+        for (Timeout<T> node = expiredHead; node != null; ) {
+            Timeout<T> next = node.next;
+            node.next = null;
+            expired.accept(node.value);
+            node = next;
+        }
+    }
+
+    /**
+     * 获取等待中的任务数量
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,184 @@
+package cn.popcraft.verify.utils;
+
+import cn.popcraft.verify.VerifyPlugin;
+import org.bukkit.entity.Player;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * 主线程任务队列
+ * 作者: Popcraft
+ *
+ * 负责:
+ * - 接收打开界面、发放规则书、发放奖励和踢出等任务(可在任意线程提交)
+ * - 每 tick 在主线程中按优先级执行，直到用完配置的时间预算，剩余任务留到下一 tick
+ * - 统计各优先级的等待数量和每 tick 的耗时
+ *
+ * 大量玩家同时加入时，延迟打开的界面不会集中在同一 tick 执行；踢出总是先于界面和规则书。
+ * 每 tick 至少执行一个任务，保证队列总能前进。
+ *
+ * Folia 没有单一主线程，任务直接交给玩家所在的区域线程或全局线程，不经过队列。
+ */
+public class WorkQueue {
+
+    /**
+     * 任务优先级，数值越小越先执行
+     */
+    public enum Priority {
+        HIGH,       // 踢出
+        NORMAL,     // 验证完成、发放奖励
+        LOW         // 打开界面、发放规则书
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final VerifyPlugin plugin;
+    private final Queue<Runnable>[] queues;
+    private final AtomicInteger[] depths;
+    private final AtomicInteger totalDepth = new AtomicInteger();
+    private TaskScheduler.Task drainTask;
+
+    @SuppressWarnings("unchecked")
+    public WorkQueue(VerifyPlugin plugin) {
+        this.plugin = plugin;
+        this.queues = (Queue<Runnable>[]) new Queue[PRIORITIES.length];
+        this.depths = new AtomicInteger[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+            depths[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * 启动每 tick 执行一次的处理任务
+     */
+    public void start() {
+        if (!plugin.getTaskScheduler().isFolia()) {
+            drainTask = plugin.getTaskScheduler().runGlobalTimer(this::drain, 1L, 1L);
+        }
+    }
+
+    /**
+     * 提交与玩家相关的任务，执行时玩家已离开则跳过
+     */
+    public void submit(Priority priority, Player player, Runnable task) {
+        if (plugin.getTaskScheduler().isFolia()) {
+            plugin.getTaskScheduler().runForPlayer(player, task);
+            return;
+        }
+        enqueue(priority, () -> {
+            if (player.isOnline()) {
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * 延迟指定 tick 后提交与玩家相关的任务
+     */
+    public void submitLater(Priority priority, Player player, Runnable task, long delayTicks) {
+        if (plugin.getTaskScheduler().isFolia()) {
+            plugin.getTaskScheduler().runForPlayerLater(player, task, delayTicks);
+            return;
+        }
+        plugin.getTaskScheduler().runForPlayerLater(player, () -> submit(priority, player, task), delayTicks);
+    }
+
+    /**
+     * 提交全局任务(例如以控制台身份执行命令)
+     */
+    public void submitGlobal(Priority priority, Runnable task) {
+        if (plugin.getTaskScheduler().isFolia()) {
+            plugin.getTaskScheduler().runGlobal(task);
+            return;
+        }
+        enqueue(priority, task);
+    }
+
+    private void enqueue(Priority priority, Runnable task) {
+        queues[priority.ordinal()].offer(task);
+        depths[priority.ordinal()].incrementAndGet();
+        totalDepth.incrementAndGet();
+    }
+
+    /**
+     * 按优先级执行任务，直到用完本 tick 的时间预算(主线程)
+     */
+    private void drain() {
+        if (totalDepth.get() == 0) {
+            return;
+        }
+
+        long budget = plugin.getConfigManager().getSettings().getWorkQueueTickBudgetMicros() * 1000L;
+        long start = System.nanoTime();
+        int executed = 0;
+        long elapsed = 0L;
+
+        while (true) {
+            Runnable task = poll();
+            if (task == null) {
+                break;
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING, "执行队列任务时发生错误", t);
+            }
+            executed++;
+
+            elapsed = System.nanoTime() - start;
+            if (elapsed >= budget) {
+                break;
+            }
+        }
+
+        plugin.getMetrics().recordWorkTick(elapsed, executed, totalDepth.get() > 0);
+    }
+
+    /**
+     * 取出优先级最高的任务
+     */
+    private Runnable poll() {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            Runnable task = queues[i].poll();
+            if (task != null) {
+                depths[i].decrementAndGet();
+                totalDepth.decrementAndGet();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取指定优先级等待执行的任务数量
+     */
+    public int getDepth(Priority priority) {
+        return depths[priority.ordinal()].get();
+    }
+
+    /**
+     * 获取等待执行的任务总数
+     */
+    public int getTotalDepth() {
+        return totalDepth.get();
+    }
+
+    /**
+     * 停止处理任务，剩余的任务不再执行
+     */
+    public void close() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues[i].clear();
+            depths[i].set(0);
+        }
+        totalDepth.set(0);
+    }
+}